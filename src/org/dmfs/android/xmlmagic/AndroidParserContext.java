@@ -17,6 +17,7 @@
 
 package org.dmfs.android.xmlmagic;
 
+import org.dmfs.android.xmlmagic.tokenresolvers.CachingTokenResolver;
 import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
 import org.dmfs.xmlobjects.pull.ParserContext;
 
@@ -34,10 +35,22 @@ public class AndroidParserContext extends ParserContext
 	private final Context mAppContext;
 	private final Resources mResources;
 	private final ITokenResolver mResolver;
+	private ResourceValueCache mResourceValues;
 
+	/**
+	 * The number of active requests to skip the evaluation of values. See {@link #skipEvaluation()}.
+	 */
+	private int mSkipEvaluation;
 
 	/**
-	 * Create a new {@link AndroidParserContext} using the given {@link Context} and {@link ITokenResolver}.
+	 * Whether any of the values loaded so far depends on placeholder tokens or other volatile sources. See {@link #markDynamic()}.
+	 */
+	private boolean mDynamic;
+
+
+	/**
+	 * Create a new {@link AndroidParserContext} using the given {@link Context} and {@link ITokenResolver}. Each distinct token is resolved only once by this
+	 * context.
 	 *
 	 * @param context
 	 *            A {@link Context}.
@@ -45,10 +58,27 @@ public class AndroidParserContext extends ParserContext
 	 *            An {@link ITokenResolver} or <code>null</code>.
 	 */
 	public AndroidParserContext(Context context, ITokenResolver resolver)
+	{
+		this(context, resolver, true);
+	}
+
+
+	/**
+	 * Create a new {@link AndroidParserContext} using the given {@link Context} and {@link ITokenResolver}.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param resolver
+	 *            An {@link ITokenResolver} or <code>null</code>.
+	 * @param cacheTokens
+	 *            <code>true</code> to resolve each distinct token only once, <code>false</code> to ask the resolver every time a token is encountered. Use
+	 *            <code>false</code> for sources whose values may change during a single load.
+	 */
+	public AndroidParserContext(Context context, ITokenResolver resolver, boolean cacheTokens)
 	{
 		mAppContext = context.getApplicationContext();
 		mResources = context.getResources();
-		mResolver = resolver;
+		mResolver = cacheTokens && resolver != null ? new CachingTokenResolver(resolver) : resolver;
 	}
 
 
@@ -63,6 +93,21 @@ public class AndroidParserContext extends ParserContext
 	}
 
 
+	/**
+	 * Get the {@link ResourceValueCache} of the {@link Resources} of this context.
+	 *
+	 * @return The {@link ResourceValueCache} for the current configuration.
+	 */
+	public ResourceValueCache getResourceValues()
+	{
+		if (mResourceValues == null)
+		{
+			mResourceValues = ResourceValueCache.get(mResources);
+		}
+		return mResourceValues;
+	}
+
+
 	/**
 	 * Get the application {@link Context}.
 	 *
@@ -81,6 +126,64 @@ public class AndroidParserContext extends ParserContext
 	 */
 	public ITokenResolver getResolver()
 	{
-		return mResolver;
+		return mSkipEvaluation > 0 ? null : mResolver;
+	}
+
+
+	/**
+	 * Stop evaluating values until {@link #resumeEvaluation()} is called. Builders call this when the result of the current element has been determined and
+	 * the values of the remaining child elements will be ignored, like in an {@code <or>} that already evaluated to <code>true</code>. While evaluation is
+	 * skipped {@link #getResolver()} returns <code>null</code>, so no tokens are resolved.
+	 * <p/>
+	 * Calls can be nested, every call must be matched by exactly one call to {@link #resumeEvaluation()}.
+	 */
+	public void skipEvaluation()
+	{
+		++mSkipEvaluation;
+	}
+
+
+	/**
+	 * Resume the evaluation of values after a call to {@link #skipEvaluation()}.
+	 */
+	public void resumeEvaluation()
+	{
+		if (mSkipEvaluation > 0)
+		{
+			--mSkipEvaluation;
+		}
+	}
+
+
+	/**
+	 * Mark the result of the current load as dynamic. Builders call this when they encounter placeholder tokens or build values that depend on the state of
+	 * the system (like {@link android.app.PendingIntent}s). Results that are not dynamic depend on nothing but the XML and the resources, which allows to
+	 * cache them.
+	 */
+	public void markDynamic()
+	{
+		mDynamic = true;
+	}
+
+
+	/**
+	 * Returns whether any of the values loaded so far is dynamic. See {@link #markDynamic()}.
+	 *
+	 * @return <code>true</code> if the result of the current load must not be cached.
+	 */
+	public boolean isDynamic()
+	{
+		return mDynamic;
+	}
+
+
+	/**
+	 * Returns whether evaluation of values is currently skipped. See {@link #skipEvaluation()}.
+	 *
+	 * @return <code>true</code> if any values built right now are going to be ignored.
+	 */
+	public boolean isSkippingEvaluation()
+	{
+		return mSkipEvaluation > 0;
 	}
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.dmfs.android.xmlmagic.builder.RemoteViewsBinding;
+import org.dmfs.android.xmlmagic.builder.RemoteViewsObjectBuilder;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.XmlContext;
+import org.dmfs.xmlobjects.pull.ParserContext;
+import org.dmfs.xmlobjects.pull.XmlObjectPull;
+import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
+import org.dmfs.xmlobjects.pull.XmlPath;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.annotation.TargetApi;
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.os.Build;
+import android.util.SparseArray;
+import android.widget.RemoteViews;
+
+
+/**
+ * Renders a {@link RemoteViews} template for app widgets and sends only what has changed since the last update of each widget.
+ * <p/>
+ * The renderer remembers the bindings it sent to each widget. If a widget has been updated before with the same layout and the new bindings only change
+ * values, it sends a {@link RemoteViews} containing only the changed bindings through {@link AppWidgetManager#partiallyUpdateAppWidget(int, RemoteViews)}.
+ * Otherwise, e.g. if the layout changed or a binding has been removed, it sends the full {@link RemoteViews}. If nothing has changed, nothing is sent.
+ * <p/>
+ * The host doesn't keep partial updates when it's restarted. Call {@link #forget(int)} or {@link #forgetAll()} when the host might have lost the state of a
+ * widget, e.g. in {@link android.appwidget.AppWidgetProvider#onUpdate(Context, AppWidgetManager, int[])}, and when a widget has been deleted.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class AppWidgetRenderer
+{
+	private final static XmlPath EMPTY_PATH = new XmlPath();
+
+	private final Context mContext;
+	private final int mId;
+
+	/**
+	 * The {@link ElementDescriptor} of the RemoteViews, registered in a private {@link XmlContext}.
+	 */
+	private final ElementDescriptor<RemoteViews> mDescriptor;
+	private final XmlContext mXmlContext = new XmlContext();
+
+	/**
+	 * The last state sent to each widget.
+	 */
+	private final SparseArray<WidgetState> mWidgets = new SparseArray<WidgetState>(8);
+
+	/**
+	 * The id of the widget that's currently being rendered.
+	 */
+	private int mCurrentWidgetId;
+
+	/**
+	 * Whether the {@link RemoteViews} that has just been rendered contains only the changes.
+	 */
+	private boolean mIsPartial;
+
+
+	/**
+	 * Create a new {@link AppWidgetRenderer} for the given {@link RemoteViews} template.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 */
+	public AppWidgetRenderer(Context context, int id)
+	{
+		mContext = context.getApplicationContext();
+		mId = id;
+		mDescriptor = ElementDescriptor.register(Model.REMOTE_VIEWS.qualifiedName, new DiffingObjectBuilder(), mXmlContext);
+	}
+
+
+	/**
+	 * Render the template with the given {@link ITokenResolver}s and send the changes to the given widget.
+	 *
+	 * @param manager
+	 *            The {@link AppWidgetManager}.
+	 * @param appWidgetId
+	 *            The id of the widget to update.
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s to resolve placeholder tokens.
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	public synchronized void update(AppWidgetManager manager, int appWidgetId, ITokenResolver... resolvers) throws IOException, XmlPullParserException,
+		XmlObjectPullParserException
+	{
+		XmlObjectPull parser = XmlLoader.newParser(mContext, mId,
+			new AndroidParserContext(mContext, XmlLoader.newResolver(mContext, resolvers), !XmlLoader.isVolatile(resolvers)));
+		parser.setContext(mXmlContext);
+
+		mCurrentWidgetId = appWidgetId;
+		RemoteViews views;
+		try
+		{
+			views = parser.pull(mDescriptor, null, EMPTY_PATH);
+		}
+		catch (RuntimeException e)
+		{
+			// we don't know what the widget shows now
+			mWidgets.remove(appWidgetId);
+			throw e;
+		}
+
+		if (views == null)
+		{
+			// nothing has changed
+			return;
+		}
+
+		try
+		{
+			if (mIsPartial)
+			{
+				manager.partiallyUpdateAppWidget(appWidgetId, views);
+			}
+			else
+			{
+				manager.updateAppWidget(appWidgetId, views);
+			}
+		}
+		catch (RuntimeException e)
+		{
+			mWidgets.remove(appWidgetId);
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Forget the state of the given widget. The next update of this widget sends the full {@link RemoteViews}.
+	 *
+	 * @param appWidgetId
+	 *            The id of a widget.
+	 */
+	public synchronized void forget(int appWidgetId)
+	{
+		mWidgets.remove(appWidgetId);
+	}
+
+
+	/**
+	 * Forget the state of all widgets. The next update of each widget sends the full {@link RemoteViews}.
+	 */
+	public synchronized void forgetAll()
+	{
+		mWidgets.clear();
+	}
+
+
+	/**
+	 * Returns the last binding in the given list with the same target as the given binding.
+	 */
+	private static RemoteViewsBinding findLast(List<RemoteViewsBinding> bindings, RemoteViewsBinding binding, int start)
+	{
+		for (int i = bindings.size() - 1; i >= start; --i)
+		{
+			RemoteViewsBinding candidate = bindings.get(i);
+			if (candidate.hasSameTarget(binding))
+			{
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The state of a widget after the last update.
+	 */
+	private final static class WidgetState
+	{
+		final int layoutId;
+		final List<RemoteViewsBinding> bindings;
+
+
+		public WidgetState(int layoutId, List<RemoteViewsBinding> bindings)
+		{
+			this.layoutId = layoutId;
+			this.bindings = bindings;
+		}
+	}
+
+	/**
+	 * A {@link RemoteViewsObjectBuilder} that builds only the bindings that have changed since the last update of the current widget.
+	 */
+	private final class DiffingObjectBuilder extends RemoteViewsObjectBuilder
+	{
+		@Override
+		protected RemoteViews build(ParserContext context, int layoutId, List<RemoteViewsBinding> bindings)
+		{
+			WidgetState last = mWidgets.get(mCurrentWidgetId);
+			mWidgets.put(mCurrentWidgetId, new WidgetState(layoutId, bindings));
+
+			if (last == null || last.layoutId != layoutId || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB)
+			{
+				mIsPartial = false;
+				return super.build(context, layoutId, bindings);
+			}
+
+			for (RemoteViewsBinding binding : last.bindings)
+			{
+				if (findLast(bindings, binding, 0) == null)
+				{
+					// a binding has been removed, the only way to undo it is a full update
+					mIsPartial = false;
+					return super.build(context, layoutId, bindings);
+				}
+			}
+
+			RemoteViews views = null;
+			for (int i = 0, count = bindings.size(); i < count; ++i)
+			{
+				RemoteViewsBinding binding = bindings.get(i);
+				if (findLast(bindings, binding, i + 1) != null)
+				{
+					// this binding is overridden by a later one
+					continue;
+				}
+
+				if (!binding.equals(findLast(last.bindings, binding, 0)))
+				{
+					if (views == null)
+					{
+						views = new RemoteViews(mContext.getPackageName(), layoutId);
+					}
+					binding.apply(views);
+				}
+			}
+			mIsPartial = true;
+			return views;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.dmfs.android.xmlmagic.tokenresolvers.CachingTokenResolver;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import android.os.Build;
+
+
+/**
+ * Loads a number of objects from different XML resources in parallel. All objects are loaded with the same chain of {@link ITokenResolver}s and each distinct
+ * token is resolved only once for the entire batch (unless any of the resolvers is an
+ * {@link org.dmfs.android.xmlmagic.tokenresolvers.IVolatileTokenResolver}).
+ * <p/>
+ * Example:
+ *
+ * <pre>
+ * <code>
+ * BatchLoader batch = new BatchLoader(context);
+ * BatchLoader.Item&lt;Notification&gt; notification = batch.add(Model.NOTIFICATION, R.xml.notification);
+ * BatchLoader.Item&lt;PendingIntent&gt; deleteIntent = batch.add(Model.PENDING_INTENT, R.xml.delete_intent);
+ * batch.load(new BundleTokenResolver(extras));
+ *
+ * notificationManager.notify(1, notification.get());
+ * </code>
+ * </pre>
+ * <p/>
+ * Note: the given {@link ITokenResolver}s are called from multiple threads, so they must be thread safe.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class BatchLoader
+{
+	/**
+	 * The maximum number of threads of the default executor.
+	 */
+	private final static int MAX_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * The default executor, it's created on first use.
+	 */
+	private static ExecutorService sDefaultExecutor;
+
+	private final Context mContext;
+	private final List<Item<?>> mItems = new ArrayList<Item<?>>();
+
+
+	/**
+	 * Create a new {@link BatchLoader}.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 */
+	public BatchLoader(Context context)
+	{
+		mContext = context.getApplicationContext();
+	}
+
+
+	/**
+	 * Add an object to load.
+	 *
+	 * @param descriptor
+	 *            The {@link ElementDescriptor} of the root element of the XML file.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @return An {@link Item} that returns the object once {@link #load(ITokenResolver...)} has returned.
+	 */
+	public <T> Item<T> add(ElementDescriptor<T> descriptor, int id)
+	{
+		Item<T> item = new Item<T>(descriptor, id);
+		mItems.add(item);
+		return item;
+	}
+
+
+	/**
+	 * Load all objects of this batch using the default executor. This method returns when all objects have been loaded.
+	 *
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s to use.
+	 */
+	public void load(ITokenResolver... resolvers) throws IOException, XmlPullParserException, XmlObjectPullParserException
+	{
+		load(getDefaultExecutor(), resolvers);
+	}
+
+
+	/**
+	 * Load all objects of this batch using the given {@link ExecutorService}. This method returns when all objects have been loaded.
+	 * <p/>
+	 * The first object is always loaded on the calling thread.
+	 *
+	 * @param executor
+	 *            The {@link ExecutorService} to load the objects.
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s to use.
+	 */
+	public void load(ExecutorService executor, ITokenResolver... resolvers) throws IOException, XmlPullParserException, XmlObjectPullParserException
+	{
+		if (mItems.isEmpty())
+		{
+			return;
+		}
+
+		ITokenResolver resolver = XmlLoader.newResolver(mContext, resolvers);
+		final ITokenResolver sharedResolver = resolver == null || XmlLoader.isVolatile(resolvers) ? resolver : new CachingTokenResolver(resolver);
+
+		List<Future<?>> futures = new ArrayList<Future<?>>(mItems.size() - 1);
+		try
+		{
+			for (int i = 1, count = mItems.size(); i < count; ++i)
+			{
+				final Item<?> item = mItems.get(i);
+				futures.add(executor.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						item.load(mContext, sharedResolver);
+						return null;
+					}
+				}));
+			}
+
+			mItems.get(0).load(mContext, sharedResolver);
+
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while loading batch");
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+			{
+				throw (IOException) cause;
+			}
+			if (cause instanceof XmlPullParserException)
+			{
+				throw (XmlPullParserException) cause;
+			}
+			if (cause instanceof XmlObjectPullParserException)
+			{
+				throw (XmlObjectPullParserException) cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error)
+			{
+				throw (Error) cause;
+			}
+			throw new RuntimeException("could not load batch", cause);
+		}
+		finally
+		{
+			// cancel any pending tasks in case we bailed out early, this is a no-op for completed tasks
+			for (Future<?> future : futures)
+			{
+				future.cancel(true);
+			}
+		}
+	}
+
+
+	private static synchronized ExecutorService getDefaultExecutor()
+	{
+		if (sDefaultExecutor == null)
+		{
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory()
+				{
+					@Override
+					public Thread newThread(Runnable runnable)
+					{
+						Thread thread = new Thread(runnable, "xmlmagic-batch");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			if (Build.VERSION.SDK_INT >= 9)
+			{
+				// not available on Froyo, the idle daemon threads just stay around there
+				executor.allowCoreThreadTimeOut(true);
+			}
+			sDefaultExecutor = executor;
+		}
+		return sDefaultExecutor;
+	}
+
+	/**
+	 * An object in a {@link BatchLoader}.
+	 *
+	 * @param <T>
+	 *            The type of the object.
+	 */
+	public final static class Item<T>
+	{
+		private final ElementDescriptor<T> mDescriptor;
+		private final int mId;
+		private volatile T mValue;
+
+
+		private Item(ElementDescriptor<T> descriptor, int id)
+		{
+			mDescriptor = descriptor;
+			mId = id;
+		}
+
+
+		private void load(Context context, ITokenResolver resolver) throws IOException, XmlPullParserException, XmlObjectPullParserException
+		{
+			mValue = XmlLoader.loadResolved(context, mId, mDescriptor, resolver);
+		}
+
+
+		/**
+		 * Returns the loaded object. This returns <code>null</code> before the batch has been loaded.
+		 *
+		 * @return The object or <code>null</code>.
+		 */
+		public T get()
+		{
+			return mValue;
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+
+
+/**
+ * Manages the caches of this library and trims them when the system runs low on memory.
+ * <p/>
+ * Each cache belongs to a tier. Large caches that are cheap to rebuild, like frozen templates, are dropped first, small caches of ids and classes are dropped
+ * last:
+ * <ul>
+ * <li>{@link #TIER_LARGE} is dropped on every trim request.</li>
+ * <li>{@link #TIER_MEDIUM} is dropped on {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}, {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} and
+ * once the process is in the background.</li>
+ * <li>{@link #TIER_SMALL} is dropped on {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} and {@link ComponentCallbacks2#TRIM_MEMORY_MODERATE} or
+ * higher.</li>
+ * </ul>
+ * On Android 4.0 and up the manager registers itself with the application context the first time a template is loaded by {@link XmlLoader}. On older
+ * versions call {@link #trimMemory(int)} from {@link android.app.Application#onLowMemory()} to release the caches.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class CacheManager
+{
+	/**
+	 * The tier of large caches that are dropped first.
+	 */
+	public final static int TIER_LARGE = 0;
+
+	/**
+	 * The tier of medium sized caches.
+	 */
+	public final static int TIER_MEDIUM = 1;
+
+	/**
+	 * The tier of small caches that are dropped last.
+	 */
+	public final static int TIER_SMALL = 2;
+
+	/**
+	 * A trim level that drops all caches.
+	 */
+	public final static int TRIM_ALL = ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+
+	/**
+	 * Interface of a cache that's managed by the {@link CacheManager}.
+	 */
+	public interface TrimmableCache
+	{
+		/**
+		 * Returns a rough estimate of the memory retained by this cache in bytes.
+		 *
+		 * @return The estimated size of the cache in bytes.
+		 */
+		public long getRetainedSize();
+
+
+		/**
+		 * Drop all entries of this cache.
+		 */
+		public void clear();
+	}
+
+	/**
+	 * The caches of each tier.
+	 */
+	@SuppressWarnings("unchecked")
+	private final static List<TrimmableCache>[] TIERS = new List[] { new CopyOnWriteArrayList<TrimmableCache>(),
+		new CopyOnWriteArrayList<TrimmableCache>(), new CopyOnWriteArrayList<TrimmableCache>() };
+
+	/**
+	 * Whether the memory callbacks have been registered already.
+	 */
+	private static volatile boolean sRegistered;
+
+
+	private CacheManager()
+	{
+	}
+
+
+	/**
+	 * Register the memory callbacks with the application context of the given {@link Context}. This is a no-op if the callbacks have been registered already
+	 * or if the device runs a version of Android older than 4.0.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 */
+	public static void registerCallbacks(Context context)
+	{
+		if (sRegistered)
+		{
+			return;
+		}
+
+		synchronized (CacheManager.class)
+		{
+			if (!sRegistered && Build.VERSION.SDK_INT >= 14)
+			{
+				context.getApplicationContext().registerComponentCallbacks(new Callbacks());
+			}
+			sRegistered = true;
+		}
+	}
+
+
+	/**
+	 * Add a cache to the given tier.
+	 *
+	 * @param cache
+	 *            The {@link TrimmableCache} to manage.
+	 * @param tier
+	 *            The tier of the cache, one of {@link #TIER_LARGE}, {@link #TIER_MEDIUM} or {@link #TIER_SMALL}.
+	 */
+	public static void register(TrimmableCache cache, int tier)
+	{
+		TIERS[tier].add(cache);
+	}
+
+
+	/**
+	 * Drop the caches that should be released at the given trim level.
+	 *
+	 * @param level
+	 *            One of the <code>TRIM_MEMORY_*</code> levels of {@link ComponentCallbacks2} or {@link #TRIM_ALL}.
+	 */
+	public static void trimMemory(int level)
+	{
+		clear(TIER_LARGE);
+
+		// the constants are inlined by the compiler, so this is safe on all Android versions
+		if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+			|| level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND)
+		{
+			clear(TIER_MEDIUM);
+		}
+
+		if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL || level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE)
+		{
+			clear(TIER_SMALL);
+		}
+	}
+
+
+	/**
+	 * Returns a rough estimate of the memory retained by all caches in bytes.
+	 *
+	 * @return The estimated size of all caches in bytes.
+	 */
+	public static long getRetainedSize()
+	{
+		long result = 0;
+		for (int tier = TIER_LARGE; tier <= TIER_SMALL; ++tier)
+		{
+			result += getRetainedSize(tier);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a rough estimate of the memory retained by all caches of the given tier in bytes.
+	 *
+	 * @param tier
+	 *            The tier, one of {@link #TIER_LARGE}, {@link #TIER_MEDIUM} or {@link #TIER_SMALL}.
+	 * @return The estimated size of the caches in bytes.
+	 */
+	public static long getRetainedSize(int tier)
+	{
+		long result = 0;
+		for (TrimmableCache cache : TIERS[tier])
+		{
+			result += cache.getRetainedSize();
+		}
+		return result;
+	}
+
+
+	private static void clear(int tier)
+	{
+		for (TrimmableCache cache : TIERS[tier])
+		{
+			cache.clear();
+		}
+	}
+
+	/**
+	 * The {@link ComponentCallbacks2} that forward trim requests. This class must not be loaded on Android versions older than 4.0.
+	 */
+	private final static class Callbacks implements ComponentCallbacks2
+	{
+		@Override
+		public void onTrimMemory(int level)
+		{
+			trimMemory(level);
+		}
+
+
+		@Override
+		public void onLowMemory()
+		{
+			trimMemory(TRIM_ALL);
+		}
+
+
+		@Override
+		public void onConfigurationChanged(Configuration newConfig)
+		{
+			// nothing to do, configuration dependent caches check the configuration themselves
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package org.dmfs.android.xmlmagic;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+
+/**
+ * An {@link Iterator} that holds a resource which must be released by calling {@link #close()} if the iteration is not completed. Iterating until
+ * {@link #hasNext()} returns <code>false</code> closes the iterator automatically. Calling {@link #close()} more than once has no effect.
+ *
+ * @param <T>
+ *            The type of the elements.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable
+{
+	/**
+	 * Releases the underlying resource. Afterwards {@link #hasNext()} returns <code>false</code>.
+	 */
+	@Override
+	public void close();
+}
@@ -19,8 +19,12 @@ package org.dmfs.android.xmlmagic;
 
 import org.dmfs.android.xmlmagic.builder.AndroidBooleanObjectBuilder;
 import org.dmfs.android.xmlmagic.builder.AndroidCharSequenceObjectBuilder;
+import org.dmfs.android.xmlmagic.builder.AndroidDoubleObjectBuilder;
+import org.dmfs.android.xmlmagic.builder.AndroidIntegerObjectBuilder;
+import org.dmfs.android.xmlmagic.builder.AndroidNetUriObjectBuilder;
 import org.dmfs.android.xmlmagic.builder.AndroidStringObjectBuilder;
 import org.dmfs.android.xmlmagic.builder.AndroidUriObjectBuilder;
+import org.dmfs.android.xmlmagic.builder.BaseAndroidObjectBuilder;
 import org.dmfs.android.xmlmagic.builder.BooleanOperationObjectBuilder;
 import org.dmfs.android.xmlmagic.builder.BundleObjectBuilder;
 import org.dmfs.android.xmlmagic.builder.EqualsObjectBuilder;
@@ -103,11 +107,30 @@ public class Model
 	public final static ElementDescriptor<CharSequence> CHAR_SEQUENCE = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "charsequence"),
 		AndroidCharSequenceObjectBuilder.INSTANCE);
 
+	/**
+	 * The {@link ElementDescriptor} of a {@code <double>} element. It uses the {@link AndroidDoubleObjectBuilder} and supports placeholders.
+	 */
+	public final static ElementDescriptor<Double> DOUBLE = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "double"),
+		AndroidDoubleObjectBuilder.INSTANCE);
+
 	public final static ElementDescriptor<Boolean> EQUALS = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "equals"), new EqualsObjectBuilder());
 
+	/**
+	 * The {@link ElementDescriptor} of an {@code <integer>} element. It uses the {@link AndroidIntegerObjectBuilder} and supports placeholders.
+	 */
+	public final static ElementDescriptor<Integer> INTEGER = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "integer"),
+		AndroidIntegerObjectBuilder.INSTANCE);
+
 	public final static ElementDescriptor<Intent> INTENT = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "intent"),
 		IntentObjectBuilder.INSTANCE);
 
+	/**
+	 * The {@link ElementDescriptor} of a {@code <net-uri>} element, which results in a {@link java.net.URI}. It uses the {@link AndroidNetUriObjectBuilder}
+	 * and supports placeholders.
+	 */
+	public final static ElementDescriptor<java.net.URI> NET_URI = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "net-uri"),
+		AndroidNetUriObjectBuilder.INSTANCE);
+
 	public final static ElementDescriptor<Notification> NOTIFICATION = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "notification"),
 		NotificationObjectBuilder.INSTANCE);
 
@@ -123,6 +146,28 @@ public class Model
 	public final static ElementDescriptor<String> STRING = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "string"),
 		AndroidStringObjectBuilder.INSTANCE);
 
+	/**
+	 * The {@link ElementDescriptor} of a {@code <templates>} element. This element is a container of multiple templates in a single file. Each template is
+	 * identified by its <code>key</code> attribute and can be loaded with {@link XmlLoader#load(android.content.Context, int, String, ElementDescriptor,
+	 * org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver...)}. The element itself doesn't build anything.
+	 * <p/>
+	 * Example:
+	 *
+	 * <pre>
+	 * {@code
+	 * <templates xmlns="http://dmfs.org/ns/android-xml-magic">
+	 *   <notification key="download_progress">...</notification>
+	 *   <notification key="download_complete">...</notification>
+	 *   <intent key="open_downloads">...</intent>
+	 * </templates>
+	 * }
+	 * </pre>
+	 */
+	public final static ElementDescriptor<Void> TEMPLATES = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "templates"),
+		new BaseAndroidObjectBuilder<Void>()
+		{
+		});
+
 	public final static ElementDescriptor<Uri> URI = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "uri"), AndroidUriObjectBuilder.INSTANCE);
 
 	public final static ElementDescriptor<Boolean> XOR = ElementDescriptor.register(QualifiedName.get(NAMESPACE, "xor"), new BooleanOperationObjectBuilder(
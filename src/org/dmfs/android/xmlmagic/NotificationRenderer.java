@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dmfs.android.xmlmagic.builder.NotificationObjectBuilder;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.XmlContext;
+import org.dmfs.xmlobjects.pull.ParserContext;
+import org.dmfs.xmlobjects.pull.XmlObjectPull;
+import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
+import org.dmfs.xmlobjects.pull.XmlPath;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.app.Notification;
+import android.content.Context;
+import android.support.v4.app.NotificationCompat;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.widget.RemoteViews;
+
+
+/**
+ * Renders a notification template many times, e.g. to update an ongoing notification. Unlike {@link XmlLoader#loadNotification(Context, int, ITokenResolver...)}
+ * a renderer keeps a single {@link NotificationCompat.Builder} for all renders and only calls the setters of fields that have changed since the previous
+ * render. Fields that have been set by the previous render, but not by the current one, are reset to their defaults. Each render sets the time of the
+ * notification to the current time, just like loading the template with {@link XmlLoader#loadNotification(Context, int, ITokenResolver...)} does.
+ * <p/>
+ * Example:
+ *
+ * <pre>
+ * <code>
+ * NotificationRenderer renderer = new NotificationRenderer(context, R.xml.download_notification);
+ * ...
+ * notificationManager.notify(1, renderer.render(new BundleTokenResolver(status)));
+ * </code>
+ * </pre>
+ * <p/>
+ * Progress notifications can be updated without rendering the template again, see {@link #updateProgress(int, int, boolean)}.
+ * <p/>
+ * Note: a renderer is not thread safe.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class NotificationRenderer
+{
+	private final static XmlPath EMPTY_PATH = new XmlPath();
+
+	/**
+	 * A field value that's not the same as any other value. It marks fields that have been modified outside of a render.
+	 */
+	private final static Object MODIFIED = new Object();
+
+	private final Context mContext;
+	private final int mId;
+
+	/**
+	 * The {@link ElementDescriptor} of the notification, registered in a private {@link XmlContext}.
+	 */
+	private final ElementDescriptor<Notification> mDescriptor;
+	private final XmlContext mXmlContext = new XmlContext();
+
+	/**
+	 * The builder of the current session. It's replaced when the actions change, because actions can't be removed from a builder.
+	 */
+	private NotificationCompat.Builder mBuilder;
+
+	private Map<NotificationObjectBuilder.Field, Object> mLastFields = new EnumMap<NotificationObjectBuilder.Field, Object>(
+		NotificationObjectBuilder.Field.class);
+	private Map<NotificationObjectBuilder.Field, Object> mCurrentFields = new EnumMap<NotificationObjectBuilder.Field, Object>(
+		NotificationObjectBuilder.Field.class);
+	private List<NotificationCompat.Action> mLastActions = new ArrayList<NotificationCompat.Action>(4);
+	private List<NotificationCompat.Action> mCurrentActions = new ArrayList<NotificationCompat.Action>(4);
+
+
+	/**
+	 * Create a new {@link NotificationRenderer} for the given notification template.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 */
+	public NotificationRenderer(Context context, int id)
+	{
+		mContext = context.getApplicationContext();
+		mId = id;
+		mDescriptor = ElementDescriptor.register(Model.NOTIFICATION.qualifiedName, new SessionObjectBuilder(), mXmlContext);
+	}
+
+
+	/**
+	 * Render the notification template with the given {@link ITokenResolver}s.
+	 *
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s to resolve placeholder tokens.
+	 * @return The {@link Notification}.
+	 */
+	public Notification render(ITokenResolver... resolvers) throws IOException, XmlPullParserException, XmlObjectPullParserException
+	{
+		XmlObjectPull parser = XmlLoader.newParser(mContext, mId,
+			new AndroidParserContext(mContext, XmlLoader.newResolver(mContext, resolvers), !XmlLoader.isVolatile(resolvers)));
+		parser.setContext(mXmlContext);
+		boolean success = false;
+		try
+		{
+			Notification result = parser.pull(mDescriptor, null, EMPTY_PATH);
+			success = true;
+			return result;
+		}
+		finally
+		{
+			if (!success)
+			{
+				// the builder may be in an unknown state, start over with the next render
+				mBuilder = null;
+				mLastFields.clear();
+				mLastActions.clear();
+			}
+			mCurrentFields.clear();
+			mCurrentActions.clear();
+		}
+	}
+
+
+	/**
+	 * Update the progress of the last rendered notification. This doesn't read the template and doesn't resolve any tokens, all other fields keep the values of
+	 * the last render.
+	 *
+	 * @param progress
+	 *            The current progress.
+	 * @param max
+	 *            The maximum progress.
+	 * @return The updated {@link Notification}.
+	 * @throws IllegalStateException
+	 *             if no notification has been rendered yet.
+	 */
+	public Notification updateProgress(int progress, int max)
+	{
+		return updateProgress(progress, max, false);
+	}
+
+
+	/**
+	 * Update the progress of the last rendered notification. This doesn't read the template and doesn't resolve any tokens, all other fields keep the values of
+	 * the last render. That includes the time of the notification, so progress updates don't move the notification.
+	 *
+	 * @param progress
+	 *            The current progress.
+	 * @param max
+	 *            The maximum progress.
+	 * @param indeterminate
+	 *            Whether the progress is indeterminate.
+	 * @return The updated {@link Notification}.
+	 * @throws IllegalStateException
+	 *             if no notification has been rendered yet.
+	 */
+	public Notification updateProgress(int progress, int max, boolean indeterminate)
+	{
+		if (mBuilder == null)
+		{
+			throw new IllegalStateException("can't update the progress before the notification has been rendered");
+		}
+
+		mBuilder.setProgress(max, progress, indeterminate);
+		// make sure the next render sets or resets the progress again
+		mLastFields.put(NotificationObjectBuilder.Field.PROGRESS, MODIFIED);
+		return mBuilder.build();
+	}
+
+
+	/**
+	 * Returns whether the given values are known to be the same.
+	 */
+	private static boolean isSame(Object a, Object b)
+	{
+		if (a == b)
+		{
+			return true;
+		}
+		if (a instanceof CharSequence && b instanceof CharSequence)
+		{
+			// styled text can't be compared reliably, so only plain text is ever considered the same
+			return !hasSpans(a) && !hasSpans(b) && TextUtils.equals((CharSequence) a, (CharSequence) b);
+		}
+		return a != null && !(a instanceof RemoteViews) && a.equals(b);
+	}
+
+
+	private static boolean hasSpans(Object text)
+	{
+		return text instanceof Spanned && ((Spanned) text).getSpans(0, ((Spanned) text).length(), Object.class).length > 0;
+	}
+
+
+	/**
+	 * Returns whether the given list of actions starts with the given prefix.
+	 */
+	private static boolean startsWith(List<NotificationCompat.Action> actions, List<NotificationCompat.Action> prefix)
+	{
+		if (prefix.size() > actions.size())
+		{
+			return false;
+		}
+		for (int i = 0, count = prefix.size(); i < count; ++i)
+		{
+			NotificationCompat.Action actionA = actions.get(i);
+			NotificationCompat.Action actionB = prefix.get(i);
+			if (actionA.icon != actionB.icon || !isSame(actionA.title, actionB.title) || !isSame(actionA.actionIntent, actionB.actionIntent))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A {@link NotificationObjectBuilder} that builds all notifications of this session with the same {@link NotificationCompat.Builder}.
+	 */
+	private final class SessionObjectBuilder extends NotificationObjectBuilder
+	{
+		@Override
+		protected NotificationCompat.Builder newState(ParserContext context)
+		{
+			if (mBuilder == null)
+			{
+				mBuilder = super.newState(context);
+			}
+			return mBuilder;
+		}
+
+
+		@Override
+		protected void setField(ParserContext context, Field field, Object value)
+		{
+			mCurrentFields.put(field, value);
+			if (!mLastFields.containsKey(field) || !isSame(mLastFields.get(field), value))
+			{
+				super.setField(context, field, value);
+			}
+		}
+
+
+		@Override
+		protected void addAction(ParserContext context, NotificationCompat.Action action)
+		{
+			// actions are added when we know whether they have changed
+			mCurrentActions.add(action);
+		}
+
+
+		@Override
+		public Notification finish(ElementDescriptor<Notification> descriptor, Notification object, ParserContext context)
+			throws XmlObjectPullParserException
+		{
+			if (startsWith(mCurrentActions, mLastActions))
+			{
+				// reset the fields that are no longer set
+				for (Field field : mLastFields.keySet())
+				{
+					if (!mCurrentFields.containsKey(field))
+					{
+						field.apply(mBuilder, null);
+					}
+				}
+				// add any new actions
+				for (int i = mLastActions.size(), count = mCurrentActions.size(); i < count; ++i)
+				{
+					mBuilder.addAction(mCurrentActions.get(i));
+				}
+			}
+			else
+			{
+				// actions can't be removed, so start over with a new builder
+				mBuilder = super.newState(context);
+				for (Map.Entry<Field, Object> entry : mCurrentFields.entrySet())
+				{
+					entry.getKey().apply(mBuilder, entry.getValue());
+				}
+				for (NotificationCompat.Action action : mCurrentActions)
+				{
+					mBuilder.addAction(action);
+				}
+			}
+
+			// every render is a new notification, like a fresh load it shows the current time
+			mBuilder.setWhen(System.currentTimeMillis());
+
+			Map<Field, Object> fields = mLastFields;
+			mLastFields = mCurrentFields;
+			mCurrentFields = fields;
+			mCurrentFields.clear();
+
+			List<NotificationCompat.Action> actions = mLastActions;
+			mLastActions = mCurrentActions;
+			mCurrentActions = actions;
+			mCurrentActions.clear();
+
+			return mBuilder.build();
+		}
+	}
+}
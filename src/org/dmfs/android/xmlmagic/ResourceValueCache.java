@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.util.TypedValue;
+
+
+/**
+ * A cache of resource values by resource id. Builders use it to resolve resource references in attributes, so repeated loads of a template don't have to go
+ * to the {@link android.content.res.AssetManager} for the same ids again.
+ * <p/>
+ * The type of each value is determined once using a {@link TypedValue}. Integer and boolean values are stored unboxed, everything else is stored as text.
+ * Values that don't exist or don't have the requested type result in the given default value instead of a {@link Resources.NotFoundException}.
+ * <p/>
+ * There is one cache per {@link Resources} instance. Each cache is bound to the {@link Configuration} it has been created with. Once the configuration of the
+ * Resources changes, {@link #get(Resources)} returns a new, empty cache.
+ * <p/>
+ * This class is thread safe.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class ResourceValueCache
+{
+	/**
+	 * The caches by {@link Resources}. The caches must not refer to their Resources, otherwise they would never be released. Guarded by the class lock.
+	 */
+	private final static Map<Resources, ResourceValueCache> CACHES = new WeakHashMap<Resources, ResourceValueCache>(4);
+
+	static
+	{
+		CacheManager.register(new CacheManager.TrimmableCache()
+		{
+			@Override
+			public long getRetainedSize()
+			{
+				return retainedSize();
+			}
+
+
+			@Override
+			public void clear()
+			{
+				clearAll();
+			}
+		}, CacheManager.TIER_SMALL);
+	}
+
+	/**
+	 * The configuration this cache has been created for.
+	 */
+	private final Configuration mConfiguration;
+
+	/**
+	 * The {@link TypedValue} type of each value that has been loaded so far. {@link TypedValue#TYPE_NULL} marks ids that don't exist.
+	 */
+	private final SparseIntArray mTypes = new SparseIntArray(32);
+
+	/**
+	 * The data of all integer and boolean values.
+	 */
+	private final SparseIntArray mIntegers = new SparseIntArray(16);
+
+	/**
+	 * The text of all other values.
+	 */
+	private final SparseArray<CharSequence> mTexts = new SparseArray<CharSequence>(16);
+
+	/**
+	 * A {@link TypedValue} to load values. Guarded by this instance.
+	 */
+	private final TypedValue mValue = new TypedValue();
+
+
+	private ResourceValueCache(Configuration configuration)
+	{
+		mConfiguration = configuration;
+	}
+
+
+	/**
+	 * Returns the {@link ResourceValueCache} for the given {@link Resources} and their current {@link Configuration}.
+	 *
+	 * @param resources
+	 *            The {@link Resources} to load the values from.
+	 * @return A {@link ResourceValueCache}.
+	 */
+	public static synchronized ResourceValueCache get(Resources resources)
+	{
+		Configuration configuration = resources.getConfiguration();
+		ResourceValueCache cache = CACHES.get(resources);
+		if (cache == null || !cache.mConfiguration.equals(configuration))
+		{
+			cache = new ResourceValueCache(new Configuration(configuration));
+			CACHES.put(resources, cache);
+		}
+		return cache;
+	}
+
+
+	/**
+	 * Drop all cached values.
+	 */
+	public static synchronized void clearAll()
+	{
+		CACHES.clear();
+	}
+
+
+	/**
+	 * Returns a rough estimate of the memory retained by all caches.
+	 */
+	private static synchronized long retainedSize()
+	{
+		long result = 0;
+		for (ResourceValueCache cache : CACHES.values())
+		{
+			result += cache.size();
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a rough estimate of the memory retained by this cache.
+	 */
+	private synchronized long size()
+	{
+		// each entry of the sparse maps takes an int key and an int or a reference
+		long result = (mTypes.size() + mIntegers.size() + mTexts.size()) * 8;
+		for (int i = 0, count = mTexts.size(); i < count; ++i)
+		{
+			CharSequence text = mTexts.valueAt(i);
+			result += text == null ? 0 : text.length() * 2;
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns the text of the given resource, like {@link Resources#getText(int)} does.
+	 *
+	 * @param resources
+	 *            The {@link Resources} this cache belongs to.
+	 * @param id
+	 *            The resource id.
+	 * @return The text or <code>null</code> if there is no such resource.
+	 */
+	public synchronized CharSequence getText(Resources resources, int id)
+	{
+		int type = load(resources, id);
+		CharSequence text = mTexts.get(id);
+		if (text == null && type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT)
+		{
+			// coerce the integer value to a string once
+			text = TypedValue.coerceToString(type, mIntegers.get(id));
+			mTexts.put(id, text);
+		}
+		return text;
+	}
+
+
+	/**
+	 * Returns the value of the given resource as a {@link String}.
+	 *
+	 * @param resources
+	 *            The {@link Resources} this cache belongs to.
+	 * @param id
+	 *            The resource id.
+	 * @return The string or <code>null</code> if there is no such resource.
+	 */
+	public String getString(Resources resources, int id)
+	{
+		CharSequence text = getText(resources, id);
+		return text == null ? null : text.toString();
+	}
+
+
+	/**
+	 * Returns the integer value of the given resource.
+	 *
+	 * @param resources
+	 *            The {@link Resources} this cache belongs to.
+	 * @param id
+	 *            The resource id.
+	 * @param defaultValue
+	 *            The value to return if the resource doesn't exist or is not an integer.
+	 * @return The integer value.
+	 */
+	public synchronized int getInteger(Resources resources, int id, int defaultValue)
+	{
+		int type = load(resources, id);
+		return type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT ? mIntegers.get(id) : defaultValue;
+	}
+
+
+	/**
+	 * Returns the boolean value of the given resource.
+	 *
+	 * @param resources
+	 *            The {@link Resources} this cache belongs to.
+	 * @param id
+	 *            The resource id.
+	 * @param defaultValue
+	 *            The value to return if the resource doesn't exist or is not a boolean.
+	 * @return The boolean value.
+	 */
+	public synchronized boolean getBoolean(Resources resources, int id, boolean defaultValue)
+	{
+		int type = load(resources, id);
+		return type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT ? mIntegers.get(id) != 0 : defaultValue;
+	}
+
+
+	/**
+	 * Load the given resource if it's not in the cache yet and return its type. Must be called with the instance lock held.
+	 */
+	private int load(Resources resources, int id)
+	{
+		int index = mTypes.indexOfKey(id);
+		if (index >= 0)
+		{
+			return mTypes.valueAt(index);
+		}
+
+		TypedValue value = mValue;
+		int type;
+		try
+		{
+			resources.getValue(id, value, true);
+			type = value.type;
+		}
+		catch (Resources.NotFoundException e)
+		{
+			// remember that there is no such resource, so we don't try again
+			type = TypedValue.TYPE_NULL;
+		}
+
+		if (type >= TypedValue.TYPE_FIRST_INT && type <= TypedValue.TYPE_LAST_INT)
+		{
+			mIntegers.put(id, value.data);
+		}
+		else if (type == TypedValue.TYPE_STRING)
+		{
+			mTexts.put(id, value.string);
+		}
+		else if (type != TypedValue.TYPE_NULL)
+		{
+			mTexts.put(id, value.coerceToString());
+		}
+		mTypes.put(id, type);
+
+		// don't keep a reference to the last string
+		value.string = null;
+		return type;
+	}
+}
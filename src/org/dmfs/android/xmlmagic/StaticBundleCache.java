@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+
+/**
+ * A cache of {@link Bundle}s that have been loaded from XML resources without any placeholder tokens. Such Bundles depend on nothing but the XML and the
+ * resource configuration, so they are frozen when loaded the first time and subsequent loads just return a copy.
+ * <p/>
+ * Frozen Bundles are stored in parcelled form if possible. Each copy is a new Bundle that's unparcelled lazily when it's accessed the first time, so copies
+ * never share any mutable values. Bundles that can't be parcelled are copied with {@link Bundle#Bundle(Bundle)}, recursively for nested Bundles.
+ * <p/>
+ * Parcelled Bundles are also persisted by the {@link StaticBundleStore}, so they don't have to be loaded from XML again after a restart of the process.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+final class StaticBundleCache
+{
+	/**
+	 * The frozen Bundles by resource id. Guarded by the class lock.
+	 */
+	private final static SparseArray<Entry> ENTRIES = new SparseArray<Entry>(16);
+
+	/**
+	 * The ids that have been looked up in the {@link StaticBundleStore} for {@link #sStoreConfiguration}. Guarded by the class lock.
+	 */
+	private final static SparseBooleanArray STORE_CHECKED = new SparseBooleanArray(16);
+
+	/**
+	 * The configuration the ids in {@link #STORE_CHECKED} have been looked up for. Guarded by the class lock.
+	 */
+	private static Configuration sStoreConfiguration;
+
+	/**
+	 * The assumed size of a Bundle that could not be parcelled.
+	 */
+	private final static int UNPARCELLED_SIZE = 1024;
+
+	static
+	{
+		CacheManager.register(new CacheManager.TrimmableCache()
+		{
+			@Override
+			public long getRetainedSize()
+			{
+				return retainedSize();
+			}
+
+
+			@Override
+			public void clear()
+			{
+				StaticBundleCache.clear();
+			}
+		}, CacheManager.TIER_LARGE);
+	}
+
+
+	private StaticBundleCache()
+	{
+	}
+
+
+	/**
+	 * Returns a copy of the frozen {@link Bundle} that has been loaded from the given resource.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @return A new {@link Bundle} or <code>null</code> if there is no frozen Bundle for the current configuration.
+	 */
+	static Bundle get(Context context, int id)
+	{
+		Entry entry;
+		synchronized (StaticBundleCache.class)
+		{
+			entry = ENTRIES.get(id);
+		}
+
+		Configuration configuration = context.getResources().getConfiguration();
+		if (entry == null || !entry.configuration.equals(configuration))
+		{
+			entry = restore(context, id, configuration);
+			if (entry == null)
+			{
+				return null;
+			}
+		}
+		return entry.copy(context.getClassLoader());
+	}
+
+
+	/**
+	 * Freeze the given {@link Bundle} that has been loaded from the given resource. The given Bundle is not modified and can be returned to the caller.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param bundle
+	 *            The {@link Bundle} to freeze.
+	 */
+	static void put(Context context, int id, Bundle bundle)
+	{
+		Entry entry = new Entry(new Configuration(context.getResources().getConfiguration()), bundle);
+		synchronized (StaticBundleCache.class)
+		{
+			ENTRIES.put(id, entry);
+		}
+
+		if (entry.mParcel != null)
+		{
+			StaticBundleStore.write(context, id, entry.configuration, entry.mParcel);
+		}
+	}
+
+
+	/**
+	 * Restore the frozen {@link Bundle} of the given resource from the {@link StaticBundleStore}. Each id is looked up only once per configuration.
+	 *
+	 * @return The restored {@link Entry} or <code>null</code> if the Bundle has not been stored yet.
+	 */
+	private static Entry restore(Context context, int id, Configuration configuration)
+	{
+		synchronized (StaticBundleCache.class)
+		{
+			if (sStoreConfiguration == null || !sStoreConfiguration.equals(configuration))
+			{
+				STORE_CHECKED.clear();
+				sStoreConfiguration = new Configuration(configuration);
+			}
+			else if (STORE_CHECKED.get(id))
+			{
+				return null;
+			}
+			STORE_CHECKED.put(id, true);
+		}
+
+		byte[] parcel = StaticBundleStore.read(context, id, configuration);
+		if (parcel == null)
+		{
+			return null;
+		}
+
+		Entry entry = new Entry(new Configuration(configuration), parcel);
+		synchronized (StaticBundleCache.class)
+		{
+			ENTRIES.put(id, entry);
+		}
+		return entry;
+	}
+
+
+	/**
+	 * Drop all frozen {@link Bundle}s.
+	 */
+	static synchronized void clear()
+	{
+		ENTRIES.clear();
+		// allow to restore the Bundles from the store
+		STORE_CHECKED.clear();
+	}
+
+
+	/**
+	 * Returns a rough estimate of the memory retained by the frozen {@link Bundle}s.
+	 */
+	private static synchronized long retainedSize()
+	{
+		long result = 0;
+		for (int i = 0, count = ENTRIES.size(); i < count; ++i)
+		{
+			result += ENTRIES.valueAt(i).size();
+		}
+		return result;
+	}
+
+
+	/**
+	 * Returns a copy of the given {@link Bundle}. Nested Bundles are copied as well, all other values are shared.
+	 */
+	private static Bundle copyBundle(Bundle bundle)
+	{
+		Bundle result = new Bundle(bundle);
+		for (String key : bundle.keySet())
+		{
+			Object value = bundle.get(key);
+			if (value instanceof Bundle)
+			{
+				result.putBundle(key, copyBundle((Bundle) value));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A frozen {@link Bundle}.
+	 */
+	private final static class Entry
+	{
+		/**
+		 * The configuration the Bundle has been loaded with.
+		 */
+		final Configuration configuration;
+
+		/**
+		 * The parcelled Bundle or <code>null</code> if it could not be parcelled.
+		 */
+		private final byte[] mParcel;
+
+		/**
+		 * A private copy of the Bundle if it could not be parcelled.
+		 */
+		private final Bundle mBundle;
+
+
+		public Entry(Configuration configuration, Bundle bundle)
+		{
+			this.configuration = configuration;
+
+			byte[] data = null;
+			Parcel parcel = Parcel.obtain();
+			try
+			{
+				parcel.writeBundle(bundle);
+				data = parcel.marshall();
+			}
+			catch (RuntimeException e)
+			{
+				// the Bundle contains values that can't be marshalled (like Binders or file descriptors)
+			}
+			finally
+			{
+				parcel.recycle();
+			}
+			mParcel = data;
+			mBundle = data == null ? copyBundle(bundle) : null;
+		}
+
+
+		public Entry(Configuration configuration, byte[] parcel)
+		{
+			this.configuration = configuration;
+			mParcel = parcel;
+			mBundle = null;
+		}
+
+
+		public int size()
+		{
+			return mParcel == null ? UNPARCELLED_SIZE : mParcel.length;
+		}
+
+
+		public Bundle copy(ClassLoader classLoader)
+		{
+			if (mParcel == null)
+			{
+				return copyBundle(mBundle);
+			}
+
+			Parcel parcel = Parcel.obtain();
+			try
+			{
+				parcel.unmarshall(mParcel, 0, mParcel.length);
+				parcel.setDataPosition(0);
+				return parcel.readBundle(classLoader);
+			}
+			finally
+			{
+				parcel.recycle();
+			}
+		}
+	}
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Configuration;
+import android.os.Build;
+
+
+/**
+ * Persists the parcelled {@link android.os.Bundle}s of the {@link StaticBundleCache} in the code cache directory of the app, so they survive a restart of the
+ * process.
+ * <p/>
+ * Each file is stamped with the build of the system, the version and the last update time of the package and a key of the resource configuration. The key
+ * contains only the fields that select resources, so it doesn't change with every unrelated configuration update. Files with a different stamp or key are
+ * deleted, so an update of the app or the system or a configuration change never returns a stale Bundle. Parcels are not guaranteed to be compatible across
+ * system builds, that's why the system build is part of the stamp. The file names contain a hash of the stamp, files of older stamps are removed before the
+ * first file is written.
+ * <p/>
+ * Files are written on a background thread to a temporary file that's renamed when complete, so readers never see partially written files. Each file carries
+ * a checksum of its content. Files that can't be read or don't match their checksum are deleted.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+final class StaticBundleStore
+{
+	/**
+	 * A magic number that identifies our files.
+	 */
+	private final static int MAGIC = 0x786d6c62;
+
+	/**
+	 * The version of the file format.
+	 */
+	private final static int FORMAT_VERSION = 2;
+
+	/**
+	 * The name of the directory of the files.
+	 */
+	private final static String DIRECTORY = "xmlmagic-bundles";
+
+	/**
+	 * The maximum size of a file we accept. Anything larger is most likely corrupt.
+	 */
+	private final static int MAX_SIZE = 1024 * 1024;
+
+	/**
+	 * The stamp of the current package, it's determined on first use.
+	 */
+	private static String sStamp;
+
+	/**
+	 * The name of the package {@link #sStamp} belongs to.
+	 */
+	private static String sStampPackage;
+
+	/**
+	 * Whether the files of older stamps have been removed already.
+	 */
+	private static boolean sSwept;
+
+	/**
+	 * The executor that writes the files, it's created on first use.
+	 */
+	private static ExecutorService sWriter;
+
+
+	private StaticBundleStore()
+	{
+	}
+
+
+	/**
+	 * Read the parcelled Bundle that has been loaded from the given resource with the given {@link Configuration}.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param configuration
+	 *            The current {@link Configuration}.
+	 * @return The parcelled Bundle or <code>null</code> if there is no valid file.
+	 */
+	static byte[] read(Context context, int id, Configuration configuration)
+	{
+		File file = file(context, id, configuration);
+		if (file == null || !file.isFile())
+		{
+			return null;
+		}
+
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try
+			{
+				if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !stamp(context).equals(in.readUTF())
+					|| !key(context, configuration).equals(in.readUTF()))
+				{
+					// the file has been written by a different version or for a different configuration, it will never match again
+					throw new IOException("obsolete file");
+				}
+
+				int size = in.readInt();
+				if (size < 0 || size > MAX_SIZE)
+				{
+					throw new IOException("invalid size " + size);
+				}
+				byte[] result = new byte[size];
+				in.readFully(result);
+				if (in.readLong() != checksum(result))
+				{
+					throw new IOException("checksum mismatch");
+				}
+				return result;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			// the file is obsolete, corrupt or truncated, get rid of it
+			file.delete();
+			return null;
+		}
+	}
+
+
+	/**
+	 * Write the given parcelled Bundle that has been loaded from the given resource with the given {@link Configuration}. This returns immediately, the file
+	 * is written on a background thread.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param configuration
+	 *            The {@link Configuration} the Bundle has been loaded with.
+	 * @param parcel
+	 *            The parcelled Bundle. It must not be modified afterwards.
+	 */
+	static void write(Context context, final int id, final Configuration configuration, final byte[] parcel)
+	{
+		final Context appContext = context.getApplicationContext();
+		getWriter().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				File file = file(appContext, id, configuration);
+				if (file == null)
+				{
+					return;
+				}
+
+				File dir = file.getParentFile();
+				if (!dir.isDirectory() && !dir.mkdirs())
+				{
+					return;
+				}
+
+				sweep(appContext, dir);
+
+				File temp = new File(dir, file.getName() + ".tmp");
+				try
+				{
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+					try
+					{
+						out.writeInt(MAGIC);
+						out.writeInt(FORMAT_VERSION);
+						out.writeUTF(stamp(appContext));
+						out.writeUTF(key(appContext, configuration));
+						out.writeInt(parcel.length);
+						out.write(parcel);
+						out.writeLong(checksum(parcel));
+					}
+					finally
+					{
+						out.close();
+					}
+
+					if (!temp.renameTo(file))
+					{
+						temp.delete();
+					}
+				}
+				catch (IOException e)
+				{
+					// not a big deal, we'll try again after the next start
+					temp.delete();
+				}
+			}
+		});
+	}
+
+
+	private static long checksum(byte[] data)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		return crc.getValue();
+	}
+
+
+	/**
+	 * Removes all files of the current package that have been written with an older stamp, including left over temporary files. This is done only once per
+	 * process and must be called on the writer thread.
+	 */
+	private static void sweep(Context context, File dir)
+	{
+		if (sSwept)
+		{
+			return;
+		}
+		sSwept = true;
+
+		String packagePrefix = context.getPackageName() + "-";
+		String stampPrefix = packagePrefix + Integer.toHexString(stamp(context).hashCode()) + "-";
+		String[] names = dir.list();
+		if (names == null)
+		{
+			return;
+		}
+		for (String name : names)
+		{
+			if (name.startsWith(packagePrefix) && (!name.startsWith(stampPrefix) || name.endsWith(".tmp")))
+			{
+				new File(dir, name).delete();
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the file of the given resource and {@link Configuration}.
+	 */
+	private static File file(Context context, int id, Configuration configuration)
+	{
+		File cacheDir = Build.VERSION.SDK_INT >= 21 ? context.getCodeCacheDir() : context.getCacheDir();
+		if (cacheDir == null)
+		{
+			return null;
+		}
+		return new File(new File(cacheDir, DIRECTORY), context.getPackageName() + "-" + Integer.toHexString(stamp(context).hashCode()) + "-"
+			+ Integer.toHexString(id) + "-" + Integer.toHexString(key(context, configuration).hashCode()));
+	}
+
+
+	/**
+	 * Returns a key of the fields of the given {@link Configuration} that select resources. Unlike {@link Configuration#toString()} this doesn't contain
+	 * fields like the sequence number that change without affecting the resources.
+	 */
+	private static String key(Context context, Configuration configuration)
+	{
+		StringBuilder key = new StringBuilder(96);
+		key.append(configuration.locale).append('/');
+		key.append(configuration.mcc).append('/');
+		key.append(configuration.mnc).append('/');
+		key.append(configuration.orientation).append('/');
+		key.append(configuration.screenLayout).append('/');
+		key.append(configuration.uiMode).append('/');
+		key.append(configuration.fontScale).append('/');
+		key.append(configuration.touchscreen).append('/');
+		key.append(configuration.keyboard).append('/');
+		key.append(configuration.keyboardHidden).append('/');
+		key.append(configuration.hardKeyboardHidden).append('/');
+		key.append(configuration.navigation).append('/');
+		key.append(configuration.navigationHidden).append('/');
+		if (Build.VERSION.SDK_INT >= 13)
+		{
+			key.append(configuration.screenWidthDp).append('/');
+			key.append(configuration.screenHeightDp).append('/');
+			key.append(configuration.smallestScreenWidthDp).append('/');
+		}
+		if (Build.VERSION.SDK_INT >= 17)
+		{
+			key.append(configuration.densityDpi).append('/');
+			key.append(configuration.getLayoutDirection());
+		}
+		else
+		{
+			// older configurations don't contain the density
+			key.append(context.getResources().getDisplayMetrics().densityDpi);
+		}
+		return key.toString();
+	}
+
+
+	/**
+	 * Returns the stamp of the current system build and package version.
+	 */
+	private static synchronized String stamp(Context context)
+	{
+		String packageName = context.getPackageName();
+		if (sStamp == null || !packageName.equals(sStampPackage))
+		{
+			long lastUpdateTime = 0;
+			int versionCode = 0;
+			try
+			{
+				PackageInfo packageInfo = context.getPackageManager().getPackageInfo(packageName, 0);
+				if (Build.VERSION.SDK_INT >= 9)
+				{
+					lastUpdateTime = packageInfo.lastUpdateTime;
+				}
+				versionCode = packageInfo.versionCode;
+			}
+			catch (PackageManager.NameNotFoundException e)
+			{
+				// this should be impossible, we'll just rely on the system build
+			}
+			sStamp = Build.FINGERPRINT + "/" + versionCode + "/" + lastUpdateTime;
+			sStampPackage = packageName;
+		}
+		return sStamp;
+	}
+
+
+	private static synchronized ExecutorService getWriter()
+	{
+		if (sWriter == null)
+		{
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "xmlmagic-store");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+			if (Build.VERSION.SDK_INT >= 9)
+			{
+				// not available on Froyo, the idle daemon thread just stays around there
+				executor.allowCoreThreadTimeOut(true);
+			}
+			sWriter = executor;
+		}
+		return sWriter;
+	}
+}
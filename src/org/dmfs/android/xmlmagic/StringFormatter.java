@@ -26,10 +26,41 @@ import android.text.TextUtils;
 /**
  * Provides a static method {@link #format(CharSequence, ITokenResolver, int)} to format a string that contains placeholder tokens using the given
  * {@link ITokenResolver}.
+ * <p/>
+ * Tokens may specify a format after a pipe, like <code>{{@literal @}cursor:created|date:short}</code> or <code>{{@literal @}bundle:count|number}</code>.
+ * Supported formats are <code>date</code>, <code>time</code> and <code>datetime</code> (with an optional style <code>:short</code>, <code>:medium</code>,
+ * <code>:long</code> or <code>:full</code>) for timestamps in milliseconds and <code>number</code>, <code>integer</code> and <code>percent</code> for numbers.
+ * Values are formatted for the default locale.
  */
 public class StringFormatter
 {
 
+	/**
+	 * Interface of an object that encodes the parts of a formatted string, see {@link StringFormatter#format(CharSequence, ITokenResolver, int, Encoder)}.
+	 */
+	public interface Encoder
+	{
+		/**
+		 * Encode a piece of literal text of the format string. This includes tokens that could not be resolved.
+		 *
+		 * @param text
+		 *            The literal text.
+		 * @return The encoded text.
+		 */
+		public CharSequence encodeText(CharSequence text);
+
+
+		/**
+		 * Encode the resolved value of a token.
+		 *
+		 * @param value
+		 *            The value of a token.
+		 * @return The encoded value.
+		 */
+		public CharSequence encodeValue(CharSequence value);
+	}
+
+
 	/**
 	 * Replace all parts formed like
 	 *
@@ -43,14 +74,29 @@ public class StringFormatter
 	 */
 	public static CharSequence format(CharSequence text, ITokenResolver tokenResolver, int depth)
 	{
-		if (tokenResolver == null)
-		{
-			return text;
-		}
+		return format(text, tokenResolver, depth, null);
+	}
+
 
-		if (text == null || text.length() <= 2)
+	/**
+	 * Like {@link #format(CharSequence, ITokenResolver, int)}, but passes the literal text and the token values through the given {@link Encoder} before they
+	 * are appended to the result. Values of string resources are formatted before they are encoded.
+	 *
+	 * @param text
+	 *            The text to format.
+	 * @param tokenResolver
+	 *            The {@link ITokenResolver} to provide a value for each token.
+	 * @param depth
+	 *            The recursion depth. This only applies to string resources.
+	 * @param encoder
+	 *            The {@link Encoder} to encode the parts of the result or <code>null</code> to leave them as they are.
+	 * @return The formatted {@link CharSequence}.
+	 */
+	public static CharSequence format(CharSequence text, ITokenResolver tokenResolver, int depth, Encoder encoder)
+	{
+		if (tokenResolver == null || text == null || text.length() <= 2)
 		{
-			return text;
+			return text == null ? null : encodeText(text, encoder);
 		}
 
 		int contentLen = text.length();
@@ -66,7 +112,7 @@ public class StringFormatter
 				formatString = new SpannableStringBuilder();
 			}
 
-			formatString.append(text.subSequence(strPos, tokenPos));
+			formatString.append(encodeText(text.subSequence(strPos, tokenPos), encoder));
 			if (tokenPos == contentLen - 1)
 			{
 				// this is the last character in text
@@ -77,7 +123,7 @@ public class StringFormatter
 			if (text.charAt(tokenPos + 1) == '}')
 			{
 				// found a {} sequence, replace by { and continue
-				formatString.append('{');
+				formatString.append(encodeText("{", encoder));
 				tokenPos += 2;
 			}
 			else
@@ -90,18 +136,23 @@ public class StringFormatter
 				}
 
 				CharSequence token = text.subSequence(tokenPos + 1, closingBracket);
-				CharSequence value = tokenResolver.resolveToken(token.toString());
+				CharSequence value = resolve(token.toString(), tokenResolver);
 
 				if (value != null)
 				{
-					formatString.append(depth == 0 || !token.toString().startsWith("@string/") ? value : format(value, tokenResolver, depth - 1));
+					value = depth == 0 || !token.toString().startsWith("@string/") ? value : format(value, tokenResolver, depth - 1, null);
+					formatString.append(encoder == null ? value : encoder.encodeValue(value));
 				}
-				else
+				else if (encoder == null)
 				{
 					formatString.append('{');
 					formatString.append(token);
 					formatString.append('}');
 				}
+				else
+				{
+					formatString.append(encoder.encodeText(text.subSequence(tokenPos, closingBracket + 1)));
+				}
 				tokenPos = closingBracket + 1;
 			}
 			strPos = tokenPos;
@@ -109,12 +160,63 @@ public class StringFormatter
 
 		if (formatString != null)
 		{
-			formatString.append(text.subSequence(strPos, contentLen));
+			formatString.append(encodeText(text.subSequence(strPos, contentLen), encoder));
 			return formatString;
 		}
 		else
 		{
-			return text;
+			return encodeText(text, encoder);
 		}
 	}
+
+
+	/**
+	 * Like {@link #format(CharSequence, ITokenResolver, int)}, but returns a plain {@link String}. Values that don't contain any token and values that consist of
+	 * a single token are returned without copying them into a {@link SpannableStringBuilder}.
+	 *
+	 * @param text
+	 *            The text to format.
+	 * @param tokenResolver
+	 *            The {@link ITokenResolver} to provide a value for each token.
+	 * @param depth
+	 *            The recursion depth. This only applies to string resources.
+	 * @return The formatted {@link String}.
+	 */
+	public static String formatString(CharSequence text, ITokenResolver tokenResolver, int depth)
+	{
+		if (text == null)
+		{
+			return null;
+		}
+
+		int length = text.length();
+		if (tokenResolver != null && length > 2 && text.charAt(0) == '{' && text.charAt(1) != '}' && TextUtils.indexOf(text, '}') == length - 1)
+		{
+			// the text is a single token
+			String token = text.subSequence(1, length - 1).toString();
+			CharSequence value = resolve(token, tokenResolver);
+			if (value == null)
+			{
+				return text.toString();
+			}
+			return (depth == 0 || !token.startsWith("@string/") ? value : format(value, tokenResolver, depth - 1)).toString();
+		}
+		return format(text, tokenResolver, depth).toString();
+	}
+
+
+	/**
+	 * Resolve the given token, applying the format of the token if it has one. See {@link TokenFormat}.
+	 */
+	private static CharSequence resolve(String token, ITokenResolver tokenResolver)
+	{
+		TokenFormat format = TokenFormat.get(token);
+		return format == null ? tokenResolver.resolveToken(token) : format.format(tokenResolver);
+	}
+
+
+	private static CharSequence encodeText(CharSequence text, Encoder encoder)
+	{
+		return encoder == null ? text : encoder.encodeText(text);
+	}
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dmfs.xmlobjects.QualifiedName;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.XmlResourceParser;
+import android.util.SparseArray;
+
+
+/**
+ * An index of the keyed templates in a {@code <templates>} file, see {@link Model#TEMPLATES}.
+ * <p/>
+ * The index is built once per file and configuration by scanning the top level elements with a plain {@link XmlPullParser}, which doesn't build any objects.
+ * For every element name and key it stores the position of the element among all top level elements of the same name. Binary XML can't be read at an
+ * arbitrary offset, but with the position a loader can skip straight over all preceding elements without looking at their attributes. Keys that don't exist
+ * are rejected without parsing the file again.
+ * <p/>
+ * Keys are scoped by the element name, so an {@code <intent>} and a {@code <notification>} may have the same key. If multiple elements of the same name have
+ * the same key, the first one wins.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+final class TemplateIndex
+{
+	/**
+	 * The indices by resource id. Guarded by the class lock.
+	 */
+	private final static SparseArray<TemplateIndex> INDICES = new SparseArray<TemplateIndex>(8);
+
+	/**
+	 * The assumed size of an index entry, including its key.
+	 */
+	private final static int ENTRY_SIZE = 96;
+
+	static
+	{
+		CacheManager.register(new CacheManager.TrimmableCache()
+		{
+			@Override
+			public long getRetainedSize()
+			{
+				synchronized (TemplateIndex.class)
+				{
+					long result = 0;
+					for (int i = 0, count = INDICES.size(); i < count; ++i)
+					{
+						result += INDICES.valueAt(i).mEntries.size() * ENTRY_SIZE;
+					}
+					return result;
+				}
+			}
+
+
+			@Override
+			public void clear()
+			{
+				synchronized (TemplateIndex.class)
+				{
+					INDICES.clear();
+				}
+			}
+		}, CacheManager.TIER_SMALL);
+	}
+
+	private final Configuration mConfiguration;
+	/**
+	 * The positions of the templates by {@link #entryKey(String, String, String)}.
+	 */
+	private final Map<String, Integer> mEntries;
+
+
+	private TemplateIndex(Configuration configuration, Map<String, Integer> entries)
+	{
+		mConfiguration = configuration;
+		mEntries = entries;
+	}
+
+
+	/**
+	 * Returns the index of the given templates file for the current configuration.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @return The {@link TemplateIndex}.
+	 */
+	static TemplateIndex get(Context context, int id) throws IOException, XmlPullParserException
+	{
+		Configuration configuration = context.getResources().getConfiguration();
+		TemplateIndex index;
+		synchronized (TemplateIndex.class)
+		{
+			index = INDICES.get(id);
+		}
+
+		if (index == null || !index.mConfiguration.equals(configuration))
+		{
+			index = new TemplateIndex(new Configuration(configuration), scan(context.getResources().getXml(id)));
+			synchronized (TemplateIndex.class)
+			{
+				INDICES.put(id, index);
+			}
+		}
+		return index;
+	}
+
+
+	/**
+	 * Returns the position of the template with the given key among all top level elements with the given name.
+	 *
+	 * @param key
+	 *            The key of the template.
+	 * @param name
+	 *            The {@link QualifiedName} of the template element.
+	 * @return The position of the template or <code>-1</code> if there is no template with the given key and name.
+	 */
+	int position(String key, QualifiedName name)
+	{
+		Integer position = mEntries.get(entryKey(name.namespace, name.name, key));
+		return position == null ? -1 : position;
+	}
+
+
+	/**
+	 * Returns the key of the entry of the template with the given element name and key. Element names can't contain line breaks, so the result is unique.
+	 */
+	private static String entryKey(String namespace, String name, String key)
+	{
+		return (namespace == null ? name : namespace + ":" + name) + "\n" + key;
+	}
+
+
+	private static Map<String, Integer> scan(XmlResourceParser parser) throws IOException, XmlPullParserException
+	{
+		Map<String, Integer> result = new HashMap<String, Integer>(32);
+		Map<String, int[]> counts = new HashMap<String, int[]>(8);
+		try
+		{
+			int type;
+			while ((type = parser.next()) != XmlPullParser.END_DOCUMENT)
+			{
+				if (type != XmlPullParser.START_TAG || parser.getDepth() != 2)
+				{
+					continue;
+				}
+
+				String namespace = parser.getNamespace();
+				if (namespace != null && namespace.length() == 0)
+				{
+					namespace = null;
+				}
+				String name = parser.getName();
+
+				String qualifiedName = namespace == null ? name : namespace + ":" + name;
+				int[] count = counts.get(qualifiedName);
+				if (count == null)
+				{
+					count = new int[1];
+					counts.put(qualifiedName, count);
+				}
+
+				String key = parser.getAttributeValue(Model.ATTR_KEY.namespace, Model.ATTR_KEY.name);
+				if (key != null)
+				{
+					String entryKey = entryKey(namespace, name, key);
+					if (!result.containsKey(entryKey))
+					{
+						// the first template of a specific name and key wins
+						result.put(entryKey, count[0]);
+					}
+				}
+				++count[0];
+			}
+		}
+		finally
+		{
+			parser.close();
+		}
+		return result;
+	}
+}
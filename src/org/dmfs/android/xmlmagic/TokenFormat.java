@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.text.DateFormat;
+import java.text.Format;
+import java.text.NumberFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.dmfs.android.xmlmagic.tokenresolvers.AbstractTypedTokenResolver;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITypedTokenResolver;
+
+
+/**
+ * A token with a formatter, like <code>{@literal @}cursor:created|date:short</code> or <code>{@literal @}bundle:count|number</code>. The part before the pipe
+ * is the token to resolve, the part after the pipe specifies how the value is formatted. Supported formats are:
+ * <ul>
+ * <li><code>date</code>, <code>time</code> and <code>datetime</code>, optionally followed by one of the styles <code>:short</code>, <code>:medium</code>,
+ * <code>:long</code> or <code>:full</code>. The value must be a timestamp in milliseconds since the epoch.</li>
+ * <li><code>number</code>, <code>integer</code> and <code>percent</code>.</li>
+ * </ul>
+ * Values are formatted for the default {@link Locale}. Values that can't be formatted are returned as they are. Tokens with an unknown format are not
+ * considered formatted at all, they are resolved as a whole including the pipe, so existing keys that contain a pipe keep working.
+ * <p/>
+ * Each distinct token is parsed only once. The {@link Format} instances are shared by all tokens of the same format and style. They are kept per thread,
+ * because they are not thread-safe, and are recreated only when the default locale changes.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+final class TokenFormat
+{
+	/**
+	 * The parsed tokens by their raw value.
+	 */
+	private final static ConcurrentHashMap<String, TokenFormat> FORMATS = new ConcurrentHashMap<String, TokenFormat>(16);
+
+	/**
+	 * The assumed size of a parsed token.
+	 */
+	private final static int ENTRY_SIZE = 128;
+
+	/**
+	 * The number of {@link DateFormat} styles.
+	 */
+	private final static int STYLES = 4;
+
+	/**
+	 * The {@link Locale} of the {@link Format}s of the current thread, followed by the {@link Format}s by {@link #formatIndex()}.
+	 */
+	private final static ThreadLocal<Object[]> THREAD_FORMATS = new ThreadLocal<Object[]>();
+
+	static
+	{
+		CacheManager.register(new CacheManager.TrimmableCache()
+		{
+			@Override
+			public long getRetainedSize()
+			{
+				return FORMATS.size() * ENTRY_SIZE;
+			}
+
+
+			@Override
+			public void clear()
+			{
+				FORMATS.clear();
+			}
+		}, CacheManager.TIER_SMALL);
+	}
+
+	/**
+	 * A marker for tokens without a known format, since {@link ConcurrentHashMap} doesn't take <code>null</code> values.
+	 */
+	private final static TokenFormat NONE = new TokenFormat(null, null, 0);
+
+	private enum Type
+	{
+		DATE, TIME, DATETIME, NUMBER, INTEGER, PERCENT;
+	}
+
+	/**
+	 * The token to resolve.
+	 */
+	private final String mName;
+
+	/**
+	 * The type of the format.
+	 */
+	private final Type mType;
+
+	/**
+	 * The {@link DateFormat} style.
+	 */
+	private final int mStyle;
+
+
+	private TokenFormat(String name, Type type, int style)
+	{
+		mName = name;
+		mType = type;
+		mStyle = style;
+	}
+
+
+	/**
+	 * Returns the {@link TokenFormat} of the given token.
+	 *
+	 * @param token
+	 *            A token.
+	 * @return The {@link TokenFormat} or <code>null</code> if the token doesn't specify a known format.
+	 */
+	static TokenFormat get(String token)
+	{
+		if (token.indexOf('|') < 0)
+		{
+			return null;
+		}
+
+		TokenFormat result = FORMATS.get(token);
+		if (result == null)
+		{
+			result = parse(token);
+			FORMATS.put(token, result == null ? NONE : result);
+		}
+		return result == NONE ? null : result;
+	}
+
+
+	/**
+	 * Resolve and format the value of this token.
+	 *
+	 * @param resolver
+	 *            The {@link ITokenResolver} to resolve the token.
+	 * @return The formatted value or <code>null</code> if the token can't be resolved.
+	 */
+	CharSequence format(ITokenResolver resolver)
+	{
+		Object value = resolver instanceof ITypedTokenResolver ? ((ITypedTokenResolver) resolver).resolveObject(mName) : resolver.resolveToken(mName);
+		if (value == null)
+		{
+			return null;
+		}
+
+		switch (mType)
+		{
+			case DATE:
+			case TIME:
+			case DATETIME:
+			{
+				if (!(value instanceof Date))
+				{
+					long timestamp = AbstractTypedTokenResolver.toLong(value, Long.MIN_VALUE);
+					if (timestamp == Long.MIN_VALUE)
+					{
+						// not a timestamp
+						return value.toString();
+					}
+					value = new Date(timestamp);
+				}
+				return getFormat().format(value);
+			}
+			default:
+			{
+				if (!(value instanceof Number))
+				{
+					try
+					{
+						value = Double.valueOf(value.toString());
+					}
+					catch (NumberFormatException e)
+					{
+						// not a number
+						return value.toString();
+					}
+				}
+				return getFormat().format(value);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the {@link Format} of the current thread for the default {@link Locale}.
+	 */
+	private Format getFormat()
+	{
+		Locale locale = Locale.getDefault();
+		Object[] formats = THREAD_FORMATS.get();
+		if (formats == null || !locale.equals(formats[0]))
+		{
+			// first use on this thread or the locale has changed, all formats are stale
+			formats = new Object[Type.values().length * STYLES + 1];
+			formats[0] = locale;
+			THREAD_FORMATS.set(formats);
+		}
+
+		int index = formatIndex();
+		Format format = (Format) formats[index];
+		if (format == null)
+		{
+			format = newFormat(locale);
+			formats[index] = format;
+		}
+		return format;
+	}
+
+
+	/**
+	 * Returns the index of the {@link Format} of this type and style in the array of {@link #THREAD_FORMATS}.
+	 */
+	private int formatIndex()
+	{
+		return mType.ordinal() * STYLES + mStyle + 1;
+	}
+
+
+	private Format newFormat(Locale locale)
+	{
+		switch (mType)
+		{
+			case DATE:
+				return DateFormat.getDateInstance(mStyle, locale);
+			case TIME:
+				return DateFormat.getTimeInstance(mStyle, locale);
+			case DATETIME:
+				return DateFormat.getDateTimeInstance(mStyle, mStyle, locale);
+			case INTEGER:
+				return NumberFormat.getIntegerInstance(locale);
+			case PERCENT:
+				return NumberFormat.getPercentInstance(locale);
+			default:
+				return NumberFormat.getInstance(locale);
+		}
+	}
+
+
+	/**
+	 * Parses the given token.
+	 *
+	 * @return The {@link TokenFormat} or <code>null</code> if the part after the pipe is not a known format.
+	 */
+	private static TokenFormat parse(String token)
+	{
+		int pipe = token.indexOf('|');
+		String name = token.substring(0, pipe).trim();
+		String spec = token.substring(pipe + 1).trim();
+
+		String style = null;
+		int colon = spec.indexOf(':');
+		if (colon >= 0)
+		{
+			style = spec.substring(colon + 1).trim();
+			spec = spec.substring(0, colon).trim();
+		}
+
+		try
+		{
+			Type type = Type.valueOf(spec.toUpperCase(Locale.US));
+			// number formats don't have a style, don't create one per style
+			return new TokenFormat(name, type, type == Type.DATE || type == Type.TIME || type == Type.DATETIME ? parseStyle(style) : DateFormat.MEDIUM);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// unknown format, the pipe is most likely part of the token
+			return null;
+		}
+	}
+
+
+	private static int parseStyle(String style)
+	{
+		if ("short".equals(style))
+		{
+			return DateFormat.SHORT;
+		}
+		if ("long".equals(style))
+		{
+			return DateFormat.LONG;
+		}
+		if ("full".equals(style))
+		{
+			return DateFormat.FULL;
+		}
+		return DateFormat.MEDIUM;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.dmfs.android.xmlmagic;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.pull.XmlObjectPull;
+import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
+import org.dmfs.xmlobjects.pull.XmlPath;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import android.content.res.XmlResourceParser;
+
+
+/**
+ * An {@link Iterable} over the child elements of the root element of an XML resource. The elements are built one at a time while iterating, so the file is
+ * never loaded entirely. See {@link XmlLoader#iterate(Context, int, ElementDescriptor, ElementDescriptor, ITokenResolver...)}.
+ * <p/>
+ * The returned iterators hold an open parser of the resource. It's closed when all elements have been read. Callers that stop early must call
+ * {@link CloseableIterator#close()}.
+ *
+ * @param <T>
+ *            The type of the elements.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class XmlIterable<T> implements Iterable<T>
+{
+	private final Context mContext;
+	private final int mId;
+	private final XmlPath mPath;
+	private final ElementDescriptor<T> mDescriptor;
+	private final ITokenResolver[] mResolvers;
+
+
+	XmlIterable(Context context, int id, ElementDescriptor<?> rootDescriptor, ElementDescriptor<T> descriptor, ITokenResolver... resolvers)
+	{
+		mContext = context;
+		mId = id;
+		mPath = new XmlPath(rootDescriptor);
+		mDescriptor = descriptor;
+		mResolvers = resolvers;
+	}
+
+
+	@Override
+	public CloseableIterator<T> iterator()
+	{
+		AndroidParserContext parserContext = new AndroidParserContext(mContext, XmlLoader.newResolver(mContext, mResolvers), !XmlLoader.isVolatile(mResolvers));
+		try
+		{
+			return new XmlIterator(XmlLoader.newParser(mContext, mId, parserContext), parserContext.getXmlPullParser());
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("could not open XML resource", e);
+		}
+		catch (XmlPullParserException e)
+		{
+			throw new RuntimeException("could not open XML resource", e);
+		}
+		catch (XmlObjectPullParserException e)
+		{
+			throw new RuntimeException("could not open XML resource", e);
+		}
+	}
+
+	/**
+	 * A {@link CloseableIterator} that pulls one element at a time.
+	 */
+	private final class XmlIterator implements CloseableIterator<T>
+	{
+		private XmlObjectPull mPullParser;
+		private final XmlPullParser mXmlParser;
+
+		/**
+		 * Whether the parser has been moved to the next element that hasn't been returned yet.
+		 */
+		private boolean mHasNext;
+
+		/**
+		 * The last element that has been returned, it's passed to the builder for recycling.
+		 */
+		private T mPrevious;
+
+
+		public XmlIterator(XmlObjectPull pullParser, XmlPullParser xmlParser)
+		{
+			mPullParser = pullParser;
+			mXmlParser = xmlParser;
+		}
+
+
+		@Override
+		public boolean hasNext()
+		{
+			if (!mHasNext && mPullParser != null)
+			{
+				try
+				{
+					mHasNext = mPullParser.moveToNext(mDescriptor, mPath);
+				}
+				catch (Exception e)
+				{
+					close();
+					throw new RuntimeException("could not read next element", e);
+				}
+
+				if (!mHasNext)
+				{
+					close();
+				}
+			}
+			return mHasNext;
+		}
+
+
+		@Override
+		public T next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException("no more elements");
+			}
+
+			mHasNext = false;
+			try
+			{
+				mPrevious = mPullParser.pull(mDescriptor, mPrevious, mPath);
+			}
+			catch (Exception e)
+			{
+				close();
+				throw new RuntimeException("could not read element", e);
+			}
+			return mPrevious;
+		}
+
+
+		@Override
+		public void remove()
+		{
+			throw new UnsupportedOperationException("remove is not supported");
+		}
+
+
+		@Override
+		public void close()
+		{
+			if (mPullParser == null)
+			{
+				// already closed
+				return;
+			}
+			mHasNext = false;
+			mPullParser = null;
+			mPrevious = null;
+			if (mXmlParser instanceof XmlResourceParser)
+			{
+				((XmlResourceParser) mXmlParser).close();
+			}
+		}
+	}
+}
@@ -20,8 +20,10 @@ package org.dmfs.android.xmlmagic;
 import java.io.IOException;
 
 import org.dmfs.android.xmlmagic.builder.RecyclingReflectionObjectBuilder;
+import org.dmfs.android.xmlmagic.predicate.CompiledPredicate;
 import org.dmfs.android.xmlmagic.tokenresolvers.AndroidTokenResolver;
 import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.android.xmlmagic.tokenresolvers.IVolatileTokenResolver;
 import org.dmfs.xmlobjects.ElementDescriptor;
 import org.dmfs.xmlobjects.QualifiedName;
 import org.dmfs.xmlobjects.XmlContext;
@@ -56,6 +58,8 @@ public class XmlLoader
 
 	private final static XmlPath EMPTY_PATH = new XmlPath();
 
+	private final static XmlPath TEMPLATES_PATH = new XmlPath(Model.TEMPLATES);
+
 
 	/**
 	 * Populates the given {@link Activity} from XML. This will initialize all fields annotated with {@link Element} or {@link Attribute} with the respective
@@ -322,20 +326,269 @@ public class XmlLoader
 	}
 
 
+	/**
+	 * Loads a {@link Bundle} from the given XML resource.
+	 * <p/>
+	 * Bundles that don't contain any placeholder tokens are loaded from XML only once per configuration. Subsequent calls return a copy of the Bundle that has
+	 * been loaded the first time.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s to resolve placeholder tokens.
+	 * @return The {@link Bundle}.
+	 */
 	public static Bundle loadBundle(Context context, int id, ITokenResolver... resolvers) throws IOException, XmlPullParserException,
 		XmlObjectPullParserException
 	{
-		return getParser(context, id, resolvers).pull(Model.BUNDLE, null, EMPTY_PATH);
+		Bundle result = StaticBundleCache.get(context, id);
+		if (result != null)
+		{
+			return result;
+		}
+
+		AndroidParserContext parserContext = new AndroidParserContext(context, newResolver(context, resolvers), !isVolatile(resolvers));
+		result = newParser(context, id, parserContext).pull(Model.BUNDLE, null, EMPTY_PATH);
+		if (result != null && !parserContext.isDynamic())
+		{
+			StaticBundleCache.put(context, id, result);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Compiles the boolean expression in the given XML resource into a {@link CompiledPredicate} that can be evaluated many times with different
+	 * {@link ITokenResolver}s. The root element must be an {@code <and>}, {@code <or>}, {@code <xor>}, {@code <equals>} or {@code <boolean>} element.
+	 * <p/>
+	 * Placeholders are only supported in {@code <boolean>}, {@code <string>} and {@code <charsequence>} elements and in <code>invert</code> attributes. Any
+	 * other element that contains placeholders, like an {@code <integer>}, results in an {@link XmlObjectPullParserException}.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @return A {@link CompiledPredicate}.
+	 */
+	public static CompiledPredicate loadPredicate(Context context, int id) throws IOException, XmlPullParserException, XmlObjectPullParserException
+	{
+		return CompiledPredicate.compile(context, id);
+	}
+
+
+	/**
+	 * Loads the template with the given key from a file that contains multiple templates, see {@link Model#TEMPLATES}.
+	 * <p/>
+	 * Example:
+	 *
+	 * <pre>
+	 * <code>
+	 * Notification notification = XmlLoader.load(context, R.xml.notifications, "download_complete", Model.NOTIFICATION, new BundleTokenResolver(extras));
+	 * </code>
+	 * </pre>
+	 * <p/>
+	 * The top level elements of the file are indexed the first time a key is requested, so no object is built but the one with the given key.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param key
+	 *            The key of the template to load.
+	 * @param descriptor
+	 *            The {@link ElementDescriptor} of the template element.
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s to resolve placeholder tokens.
+	 * @return The object or <code>null</code> if the file doesn't contain an element of the given type with the given key.
+	 */
+	public static <T> T load(Context context, int id, String key, ElementDescriptor<T> descriptor, ITokenResolver... resolvers) throws IOException,
+		XmlPullParserException, XmlObjectPullParserException
+	{
+		int position = TemplateIndex.get(context, id).position(key, descriptor.qualifiedName);
+		if (position < 0)
+		{
+			return null;
+		}
+
+		XmlObjectPull pullParser = getParser(context, id, resolvers);
+		// skip all preceding elements of the same type
+		for (int i = 0; i <= position; ++i)
+		{
+			if (!pullParser.moveToNext(descriptor, TEMPLATES_PATH))
+			{
+				// the file doesn't match the index
+				return null;
+			}
+		}
+		return pullParser.pull(descriptor, null, TEMPLATES_PATH);
+	}
+
+
+	/**
+	 * Returns an {@link Iterable} over the child elements of the root element of the given XML resource. The elements are built lazily one at a time while
+	 * iterating, so even very large lists can be read with constant memory. Child elements of other types are skipped.
+	 * <p/>
+	 * Each element that has been returned is passed to the builder as the object to recycle when building the next element. Builders that support recycling,
+	 * like {@link RecyclingReflectionObjectBuilder}, populate the same instance again, so callers must not keep references to returned elements in that case.
+	 * <p/>
+	 * Example:
+	 *
+	 * <pre>
+	 * <code>
+	 * for (Intent intent : XmlLoader.iterate(context, R.xml.shortcuts, SHORTCUTS, Model.INTENT))
+	 * {
+	 *     ...
+	 * }
+	 * </code>
+	 * </pre>
+	 * <p/>
+	 * The underlying parser is closed once all elements have been read. Callers that stop early, e.g. by a <code>break</code> out of a for-each loop, must
+	 * use the {@link CloseableIterator} explicitly and close it, otherwise the parser is leaked:
+	 *
+	 * <pre>
+	 * <code>
+	 * CloseableIterator&lt;Intent&gt; iterator = XmlLoader.iterate(context, R.xml.shortcuts, SHORTCUTS, Model.INTENT).iterator();
+	 * try
+	 * {
+	 *     while (iterator.hasNext())
+	 *     {
+	 *         ...
+	 *     }
+	 * }
+	 * finally
+	 * {
+	 *     iterator.close();
+	 * }
+	 * </code>
+	 * </pre>
+	 * <p/>
+	 * Errors while reading the XML are thrown as {@link RuntimeException}s.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param rootDescriptor
+	 *            The {@link ElementDescriptor} of the root element.
+	 * @param descriptor
+	 *            The {@link ElementDescriptor} of the child elements to return.
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s to resolve placeholder tokens.
+	 * @return An {@link XmlIterable} of the child elements. Each call to {@link XmlIterable#iterator()} opens the file again.
+	 */
+	public static <T> XmlIterable<T> iterate(Context context, int id, ElementDescriptor<?> rootDescriptor, ElementDescriptor<T> descriptor,
+		ITokenResolver... resolvers)
+	{
+		return new XmlIterable<T>(context, id, rootDescriptor, descriptor, resolvers);
+	}
+
+
+	/**
+	 * Loads an object of the given type from the given XML resource using the given {@link ITokenResolver} as is.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param descriptor
+	 *            The {@link ElementDescriptor} of the root element.
+	 * @param resolver
+	 *            The {@link ITokenResolver} to use or <code>null</code>.
+	 * @return The object.
+	 */
+	static <T> T loadResolved(Context context, int id, ElementDescriptor<T> descriptor, ITokenResolver resolver) throws IOException,
+		XmlPullParserException, XmlObjectPullParserException
+	{
+		return newParser(context, id, resolver, false).pull(descriptor, null, EMPTY_PATH);
 	}
 
 
 	private static XmlObjectPull getParser(Context context, int id, ITokenResolver... resolvers) throws IOException, XmlPullParserException,
 		XmlObjectPullParserException
 	{
+		return newParser(context, id, newResolver(context, resolvers), !isVolatile(resolvers));
+	}
+
+
+	/**
+	 * Returns whether any of the given {@link ITokenResolver}s is an {@link IVolatileTokenResolver}.
+	 *
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s provided by the caller, may be <code>null</code> or empty.
+	 * @return <code>true</code> if the values of the given resolvers must not be cached.
+	 */
+	static boolean isVolatile(ITokenResolver... resolvers)
+	{
+		if (resolvers != null)
+		{
+			for (ITokenResolver resolver : resolvers)
+			{
+				if (resolver instanceof IVolatileTokenResolver)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the {@link ITokenResolver} to use when loading with the given {@link ITokenResolver}s.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param resolvers
+	 *            The {@link ITokenResolver}s provided by the caller, may be <code>null</code> or empty.
+	 * @return An {@link ITokenResolver} or <code>null</code> if no resolvers have been provided.
+	 */
+	static ITokenResolver newResolver(Context context, ITokenResolver... resolvers)
+	{
+		return resolvers != null && resolvers.length > 0 ? new AndroidTokenResolver(context).setResolvers(resolvers) : null;
+	}
+
+
+	/**
+	 * Returns an {@link XmlObjectPull} parser for the given XML resource that uses the given {@link ITokenResolver} as is.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param resolver
+	 *            The {@link ITokenResolver} to use or <code>null</code>.
+	 * @param cacheTokens
+	 *            Whether each distinct token should be resolved only once during the load.
+	 * @return An {@link XmlObjectPull} parser.
+	 */
+	static XmlObjectPull newParser(Context context, int id, ITokenResolver resolver, boolean cacheTokens) throws IOException, XmlPullParserException,
+		XmlObjectPullParserException
+	{
+		return newParser(context, id, new AndroidParserContext(context, resolver, cacheTokens));
+	}
+
+
+	/**
+	 * Returns an {@link XmlObjectPull} parser for the given XML resource that uses the given {@link AndroidParserContext}.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @param parserContext
+	 *            The {@link AndroidParserContext} of the parser.
+	 * @return An {@link XmlObjectPull} parser.
+	 */
+	static XmlObjectPull newParser(Context context, int id, AndroidParserContext parserContext) throws IOException, XmlPullParserException,
+		XmlObjectPullParserException
+	{
+		CacheManager.registerCallbacks(context);
+
 		Resources res = context.getResources();
 
 		XmlResourceParser xmlParser = res.getXml(id);
-		return new XmlObjectPull(xmlParser, resolvers != null && resolvers.length > 0 ? new AndroidParserContext(context,
-			new AndroidTokenResolver(context).setResolvers(resolvers)) : new AndroidParserContext(context, null));
+		return new XmlObjectPull(xmlParser, parserContext);
 	}
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.dmfs.android.xmlmagic.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Sets how the class name of a {@link Class} field is resolved. This has no effect if the annotated field is not a {@link Class}.
+ * <p/>
+ * Without this annotation classes are loaded and initialized by the class loader of the library, just like {@link Class#forName(String)} does.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD })
+public @interface ResolveClass {
+
+	/**
+	 * If <code>true</code> the class is initialized when it's loaded, otherwise initialization is deferred until the class is used the first time.
+	 * <p>
+	 * Default: <code>true</code>
+	 * </p>
+	 */
+	boolean initialize() default true;
+
+	/**
+	 * If <code>true</code> the class is loaded by the class loader of the application instead of the class loader of the library.
+	 * <p>
+	 * Default: <code>false</code>
+	 * </p>
+	 */
+	boolean appClassLoader() default false;
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.builder;
+
+import org.dmfs.xmlobjects.pull.ParserContext;
+
+
+/**
+ * The base of all builders that need to keep intermediate state while an element is being built. The state is stored in the per-element state slot of the
+ * {@link ParserContext}, so it's bound to a single parse and a single element.
+ * <p/>
+ * Builders are usually shared static instances. Subclasses must not keep any mutable state in instance fields, but only in the state object returned by
+ * {@link #getState(ParserContext)}. That allows to use the same builder in multiple parsers running on different threads at the same time.
+ *
+ * @param <T>
+ *            The type of the objects this builder builds.
+ * @param <S>
+ *            The type of the state object.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public abstract class AbstractStatefulObjectBuilder<T, S> extends BaseAndroidObjectBuilder<T>
+{
+
+	/**
+	 * Create a new state object for the element that's currently being built.
+	 *
+	 * @param context
+	 *            The current {@link ParserContext}.
+	 * @return A new state object, never <code>null</code>.
+	 */
+	protected abstract S newState(ParserContext context);
+
+
+	/**
+	 * Creates a new state object for the current element, replacing any previous state. Call this in
+	 * {@link #get(org.dmfs.xmlobjects.ElementDescriptor, Object, ParserContext)} to make sure that no state of a previous sibling element is picked up.
+	 *
+	 * @param context
+	 *            The current {@link ParserContext}.
+	 * @return The new state object.
+	 */
+	protected final S initState(ParserContext context)
+	{
+		S state = newState(context);
+		context.setState(state);
+		return state;
+	}
+
+
+	/**
+	 * Returns the state object of the current element, creating one if necessary.
+	 *
+	 * @param context
+	 *            The current {@link ParserContext}.
+	 * @return The state object of the current element.
+	 */
+	protected final S getState(ParserContext context)
+	{
+		// the state slot of the current element is only ever written by this builder, so the cast is safe
+		@SuppressWarnings("unchecked")
+		S state = (S) context.getState();
+		if (state == null)
+		{
+			state = initState(context);
+		}
+		return state;
+	}
+
+
+	/**
+	 * Replaces the state object of the current element.
+	 *
+	 * @param context
+	 *            The current {@link ParserContext}.
+	 * @param state
+	 *            The new state object or <code>null</code> to clear the state.
+	 */
+	protected final void setState(ParserContext context, S state)
+	{
+		context.setState(state);
+	}
+}
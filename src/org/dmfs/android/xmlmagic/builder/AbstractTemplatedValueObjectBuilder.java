@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.dmfs.android.xmlmagic.builder;
+
+import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITypedTokenResolver;
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.QualifiedName;
+import org.dmfs.xmlobjects.pull.ParserContext;
+import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
+
+
+/**
+ * The base of builders for immutable values that are parsed from text, like numbers. The value can be given in an attribute called <code>value</code> or as
+ * text. Both may contain placeholder tokens.
+ * <p/>
+ * Values that consist of a single token are taken directly from an {@link ITypedTokenResolver} without converting them into a string. All other values are
+ * formatted into a plain String before they are parsed. Subclasses with expensive parsers can cache values without placeholders by overriding
+ * {@link #parseConstant(String)}.
+ * <p/>
+ * Values that can't be parsed result in <code>null</code>.
+ *
+ * @param <T>
+ *            The type of the values.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public abstract class AbstractTemplatedValueObjectBuilder<T> extends BaseAndroidObjectBuilder<T>
+{
+	protected final static QualifiedName ATTR_VALUE = QualifiedName.get("value");
+
+
+	/**
+	 * Parse the given text into a value.
+	 *
+	 * @param text
+	 *            The text to parse.
+	 * @return The value or <code>null</code> if the text is not a valid value.
+	 */
+	protected abstract T parse(String text);
+
+
+	/**
+	 * Parse the given text that doesn't contain any placeholders. By default this just calls {@link #parse(String)}.
+	 *
+	 * @param text
+	 *            The text to parse.
+	 * @return The value or <code>null</code> if the text is not a valid value.
+	 */
+	protected T parseConstant(String text)
+	{
+		return parse(text);
+	}
+
+
+	/**
+	 * Convert a value returned by {@link ITypedTokenResolver#resolveObject(String)} into a value of this builder. By default this parses the string
+	 * representation of the given value.
+	 *
+	 * @param value
+	 *            The value of a token, never <code>null</code>.
+	 * @return The value or <code>null</code> if the value can't be converted.
+	 */
+	protected T convert(Object value)
+	{
+		return parse(value.toString());
+	}
+
+
+	@Override
+	public T update(ElementDescriptor<T> descriptor, T object, QualifiedName attribute, String value, ParserContext context) throws XmlObjectPullParserException
+	{
+		if (attribute == ATTR_VALUE)
+		{
+			if (value.startsWith("@"))
+			{
+				// a resource reference
+				return parse(getCharSequenceAttr(attribute, value, context).toString().trim());
+			}
+			return valueOf(value.trim(), context);
+		}
+		return object;
+	}
+
+
+	@Override
+	public T update(ElementDescriptor<T> descriptor, T object, String text, ParserContext context) throws XmlObjectPullParserException
+	{
+		if (object != null)
+		{
+			// the attribute takes precedence
+			return object;
+		}
+		return valueOf(text.trim(), context);
+	}
+
+
+	/**
+	 * Returns the value of the given raw text.
+	 *
+	 * @param text
+	 *            The raw text, it may contain placeholders.
+	 * @param context
+	 *            A {@link ParserContext}.
+	 * @return The value or <code>null</code>.
+	 */
+	protected final T valueOf(String text, ParserContext context)
+	{
+		if (isSkippingEvaluation(context))
+		{
+			// the result is ignored anyway
+			return null;
+		}
+
+		if (text.indexOf('{') < 0)
+		{
+			return parseConstant(text);
+		}
+
+		String token = singleToken(text);
+		ITokenResolver resolver = getTokenResolver(context);
+		if (token != null && resolver instanceof ITypedTokenResolver)
+		{
+			// take the value as is
+			markDynamic(context);
+			Object value = ((ITypedTokenResolver) resolver).resolveObject(token);
+			return value == null ? null : convert(value);
+		}
+		return parse(formatString(text, context).trim());
+	}
+}
@@ -17,9 +17,6 @@
 
 package org.dmfs.android.xmlmagic.builder;
 
-import org.dmfs.android.xmlmagic.AndroidParserContext;
-import org.dmfs.android.xmlmagic.StringFormatter;
-import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
 import org.dmfs.xmlobjects.ElementDescriptor;
 import org.dmfs.xmlobjects.QualifiedName;
 import org.dmfs.xmlobjects.pull.ParserContext;
@@ -86,16 +83,7 @@ public class AndroidBooleanObjectBuilder extends BaseAndroidObjectBuilder<Boolea
 			return false;
 		}
 
-		if (context instanceof AndroidParserContext)
-		{
-			// The context can provide a formatter.
-			ITokenResolver resolver = ((AndroidParserContext) context).getResolver();
-			if (resolver != null)
-			{
-				// We have a formatter. Format the given text.
-				text = StringFormatter.format(text, resolver, 5).toString();
-			}
-		}
+		text = format(text, context).toString();
 
 		return "true".equalsIgnoreCase(text) || "1".equals(text);
 	}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.dmfs.android.xmlmagic.builder;
+
+import org.dmfs.xmlobjects.ElementDescriptor;
+
+
+/**
+ * An object builder to build {@link Double} instances from XML.
+ * <p/>
+ * Examples:
+ *
+ * <pre>
+ * {@code
+ * <xmlmagic:double>3.1415</xmlmagic:double>
+ * <xmlmagic:double>{@literal@json:latitude}</xmlmagic:double>
+ * <xmlmagic:double value="{@literal@bundle:ratio}" />
+ * }
+ * </pre>
+ *
+ * A concrete {@link ElementDescriptor} using this builder is {@link org.dmfs.android.xmlmagic.Model#DOUBLE}.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public class AndroidDoubleObjectBuilder extends AbstractTemplatedValueObjectBuilder<Double>
+{
+	public final static AndroidDoubleObjectBuilder INSTANCE = new AndroidDoubleObjectBuilder();
+
+
+	@Override
+	protected Double parse(String text)
+	{
+		try
+		{
+			return Double.valueOf(text);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+
+	@Override
+	protected Double convert(Object value)
+	{
+		if (value instanceof Double)
+		{
+			return (Double) value;
+		}
+		// other numbers are parsed like the text of the token, so a float 1.1 doesn't become 1.100000023841858
+		return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte ? Double
+			.valueOf(((Number) value).doubleValue()) : parse(value.toString());
+	}
+}
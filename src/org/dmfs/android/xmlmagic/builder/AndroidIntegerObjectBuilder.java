@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.dmfs.android.xmlmagic.builder;
+
+import org.dmfs.android.xmlmagic.ResourceValueCache;
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.QualifiedName;
+import org.dmfs.xmlobjects.pull.ParserContext;
+import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
+
+import android.content.res.Resources;
+import android.util.AttributeSet;
+import android.util.Xml;
+
+
+/**
+ * An object builder to build {@link Integer} instances from XML.
+ * <p/>
+ * Examples:
+ *
+ * <pre>
+ * {@code
+ * <xmlmagic:integer>42</xmlmagic:integer>
+ * <xmlmagic:integer>{@literal@cursor:count}</xmlmagic:integer>
+ * <xmlmagic:integer value="@integer/some_integer_resource" />
+ * }
+ * </pre>
+ *
+ * References to resources that are not integers result in <code>null</code>, like any other value that's not a valid integer.
+ * <p/>
+ * A concrete {@link ElementDescriptor} using this builder is {@link org.dmfs.android.xmlmagic.Model#INTEGER}.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public class AndroidIntegerObjectBuilder extends AbstractTemplatedValueObjectBuilder<Integer>
+{
+	public final static AndroidIntegerObjectBuilder INSTANCE = new AndroidIntegerObjectBuilder();
+
+
+	@Override
+	public Integer update(ElementDescriptor<Integer> descriptor, Integer object, QualifiedName attribute, String value, ParserContext context)
+		throws XmlObjectPullParserException
+	{
+		if (attribute == ATTR_VALUE && value.startsWith("@") && !isSkippingEvaluation(context))
+		{
+			AttributeSet attributes = Xml.asAttributeSet(context.getXmlPullParser());
+			int id = attributes.getAttributeResourceValue(attribute.namespace, attribute.name, 0 /* the invalid resource id */);
+			Resources resources = getResources(context);
+			if (id != 0 && resources != null)
+			{
+				// integer resources can't be read as text
+				return getInteger(getResourceValues(context), resources, id);
+			}
+		}
+		return super.update(descriptor, object, attribute, value, context);
+	}
+
+
+	/**
+	 * Returns the value of the given integer resource or <code>null</code> if the resource doesn't exist or is not an integer.
+	 */
+	private static Integer getInteger(ResourceValueCache resourceValues, Resources resources, int id)
+	{
+		int result = resourceValues.getInteger(resources, id, Integer.MIN_VALUE);
+		if (result == Integer.MIN_VALUE && resourceValues.getInteger(resources, id, 0) != Integer.MIN_VALUE)
+		{
+			// the sentinel has been returned, the resource is not an integer
+			return null;
+		}
+		return result;
+	}
+
+
+	@Override
+	protected Integer parse(String text)
+	{
+		try
+		{
+			return Integer.valueOf(text);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+
+	@Override
+	protected Integer convert(Object value)
+	{
+		if (value instanceof Integer)
+		{
+			return (Integer) value;
+		}
+		if (value instanceof Short || value instanceof Byte)
+		{
+			return ((Number) value).intValue();
+		}
+		if (value instanceof Long && (Long) value >= Integer.MIN_VALUE && (Long) value <= Integer.MAX_VALUE)
+		{
+			return ((Long) value).intValue();
+		}
+		// anything else must be parsed like the text of the token, so 1.9 doesn't become 1
+		return parse(value.toString());
+	}
+}
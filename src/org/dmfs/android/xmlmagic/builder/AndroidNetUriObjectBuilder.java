@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.dmfs.android.xmlmagic.builder;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.dmfs.xmlobjects.ElementDescriptor;
+
+import android.support.v4.util.LruCache;
+
+
+/**
+ * An object builder to build {@link URI} instances from XML. Unlike {@link AndroidUriObjectBuilder} this builder only takes the encoded URI as text.
+ * <p/>
+ * Examples:
+ *
+ * <pre>
+ * {@code
+ * <xmlmagic:net-uri>http://dmfs.org/</xmlmagic:net-uri>
+ * <xmlmagic:net-uri>{@literal@bundle:server_url}</xmlmagic:net-uri>
+ * }
+ * </pre>
+ *
+ * Constant URIs are parsed only once, which makes this considerably cheaper than calling {@link URI#URI(String)} for every load.
+ * <p/>
+ * A concrete {@link ElementDescriptor} using this builder is {@link org.dmfs.android.xmlmagic.Model#NET_URI}.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public class AndroidNetUriObjectBuilder extends AbstractTemplatedValueObjectBuilder<URI>
+{
+	public final static AndroidNetUriObjectBuilder INSTANCE = new AndroidNetUriObjectBuilder();
+
+	/**
+	 * The maximum number of constant URIs to cache.
+	 */
+	private final static int CONSTANT_CACHE_SIZE = 64;
+
+	/**
+	 * The constant URIs by their text. Parsing a URI is expensive enough to be worth a lookup in a synchronized cache, unlike parsing numbers.
+	 */
+	private final static LruCache<String, URI> CONSTANTS = new LruCache<String, URI>(CONSTANT_CACHE_SIZE);
+
+
+	@Override
+	protected URI parse(String text)
+	{
+		try
+		{
+			return new URI(text);
+		}
+		catch (URISyntaxException e)
+		{
+			return null;
+		}
+	}
+
+
+	@Override
+	protected URI parseConstant(String text)
+	{
+		URI result = CONSTANTS.get(text);
+		if (result == null)
+		{
+			result = parse(text);
+			if (result != null)
+			{
+				CONSTANTS.put(text, result);
+			}
+		}
+		return result;
+	}
+
+
+	@Override
+	protected URI convert(Object value)
+	{
+		return value instanceof URI ? (URI) value : parse(value.toString());
+	}
+}
@@ -73,7 +73,7 @@ public class AndroidStringObjectBuilder extends BaseAndroidObjectBuilder<String>
 	{
 		if (object == null)
 		{
-			return format(text, context).toString();
+			return formatString(text, context);
 		}
 		else
 		{
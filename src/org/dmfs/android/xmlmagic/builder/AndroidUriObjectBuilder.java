@@ -17,13 +17,19 @@
 
 package org.dmfs.android.xmlmagic.builder;
 
+import java.util.Map;
+
+import org.dmfs.android.xmlmagic.CacheManager;
 import org.dmfs.android.xmlmagic.Model;
+import org.dmfs.android.xmlmagic.StringFormatter;
+import org.dmfs.android.xmlmagic.tokenresolvers.UriEncodedValue;
 import org.dmfs.xmlobjects.ElementDescriptor;
 import org.dmfs.xmlobjects.QualifiedName;
 import org.dmfs.xmlobjects.pull.ParserContext;
 import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
 
 import android.net.Uri;
+import android.support.v4.util.LruCache;
 
 
 /**
@@ -79,31 +85,129 @@ import android.net.Uri;
  * Also note that when using version #3 you have to specify a properly encoded Uri, whereas with version #1 and #2 the parts will be encoded if necessary.
  * <p/>
  * All versions support placeholders.
+ * <p/>
+ * Version #1 and #2 are encoded the same way {@link Uri.Builder} encodes the parts, but the Uri string is built in a single buffer. The encoded form of parts
+ * without placeholders is cached, so static parts are encoded only once and only parts with placeholders are encoded each time.
+ * <p/>
+ * Child elements and query parameters take an optional <code>encoded</code> attribute. If it's <code>true</code> the literal text of the element is already
+ * encoded and is used as it is, only the values of placeholders are encoded:
+ *
+ * <pre>
+ * {@code
+ * <xmlmagic:query-parameter key="q" encoded="true">type%3Aevent%20{@literal@cursor:title}</xmlmagic:query-parameter>}
+ * </pre>
+ *
+ * Token values are encoded only once per distinct value. {@link org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver}s can return a
+ * {@link UriEncodedValue} for values that are already encoded. Such values are never encoded again.
  *
  * @author Marten Gajda <marten@dmfs.org>
  */
-public class AndroidUriObjectBuilder extends BaseAndroidObjectBuilder<Uri>
+public class AndroidUriObjectBuilder extends AbstractStatefulObjectBuilder<Uri, AndroidUriObjectBuilder.UriState>
 {
 	/**
 	 * A static instance of an {@link AndroidUriObjectBuilder}.
 	 */
 	public final static AndroidUriObjectBuilder INSTANCE = new AndroidUriObjectBuilder();
 
+	/**
+	 * The maximum number of encoded values to cache.
+	 */
+	private final static int ENCODED_CACHE_SIZE = 256;
+
+	/**
+	 * The encoded values of static text by its decoded value.
+	 */
+	private final static LruCache<String, String> ENCODED_TEXT = new LruCache<String, String>(ENCODED_CACHE_SIZE);
+
+	/**
+	 * The encoded values of static path text by its decoded value. Paths are encoded differently, because they may contain slashes.
+	 */
+	private final static LruCache<String, String> ENCODED_PATH_TEXT = new LruCache<String, String>(ENCODED_CACHE_SIZE);
+
+	/**
+	 * The encoded values of tokens by their decoded value. These are kept apart from static text, so changing token values don't evict static text.
+	 */
+	private final static LruCache<String, String> ENCODED_VALUES = new LruCache<String, String>(ENCODED_CACHE_SIZE);
+
+	/**
+	 * The encoded values of tokens in paths by their decoded value.
+	 */
+	private final static LruCache<String, String> ENCODED_PATH_VALUES = new LruCache<String, String>(ENCODED_CACHE_SIZE);
+
+	/**
+	 * Encodes all parts but paths.
+	 */
+	private final static PartEncoder PART_ENCODER = new PartEncoder(null, ENCODED_TEXT, ENCODED_VALUES);
+
+	/**
+	 * Encodes paths.
+	 */
+	private final static PartEncoder PATH_ENCODER = new PartEncoder("/", ENCODED_PATH_TEXT, ENCODED_PATH_VALUES);
+
+	/**
+	 * Encodes the token values of parts that are already encoded, but paths.
+	 */
+	private final static PartEncoder ENCODED_PART_ENCODER = new PartEncoder(null, null, ENCODED_VALUES);
+
+	/**
+	 * Encodes the token values of paths that are already encoded.
+	 */
+	private final static PartEncoder ENCODED_PATH_ENCODER = new PartEncoder("/", null, ENCODED_PATH_VALUES);
+
+	private final static QualifiedName ATTR_ENCODED = QualifiedName.get("encoded");
 	private final static QualifiedName ATTR_SCHEME = QualifiedName.get("scheme");
 	private final static QualifiedName ATTR_AUTHORITY = QualifiedName.get("authority");
 	private final static QualifiedName ATTR_PATH = QualifiedName.get("path");
 	private final static QualifiedName ATTR_FRAGMENT = QualifiedName.get("fragment");
 
-	private final static ElementDescriptor<String> SCHEME = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "scheme"),
-		AndroidStringObjectBuilder.INSTANCE);
-	private final static ElementDescriptor<String> AUTHORITY = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "authority"),
-		AndroidStringObjectBuilder.INSTANCE);
-	private final static ElementDescriptor<String> PATH = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "path"),
-		AndroidStringObjectBuilder.INSTANCE);
-	private final static ElementDescriptor<String> APPEND_PATH = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "append-path"),
-		AndroidStringObjectBuilder.INSTANCE);
-	private final static ElementDescriptor<String> FRAGMENT = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "fragment"),
-		AndroidStringObjectBuilder.INSTANCE);
+	/**
+	 * A builder for the parts given as child elements. Unlike {@link AndroidStringObjectBuilder} it remembers whether the part contains any placeholders.
+	 */
+	private final static BaseAndroidObjectBuilder<Part> PART_BUILDER = new BaseAndroidObjectBuilder<Part>()
+	{
+		@Override
+		public Part get(ElementDescriptor<Part> descriptor, Part recycle, ParserContext context) throws XmlObjectPullParserException
+		{
+			return new Part();
+		}
+
+
+		@Override
+		public Part update(ElementDescriptor<Part> descriptor, Part object, QualifiedName attribute, String value, ParserContext context)
+			throws XmlObjectPullParserException
+		{
+			if (attribute == ATTR_ENCODED)
+			{
+				object.isEncoded = getBooleanAttr(attribute, context);
+			}
+			else
+			{
+				object.isStatic = isStatic(value);
+				// resolve resource references of static values right away, values with placeholders are formatted when they are encoded
+				object.value = object.isStatic ? getCharSequenceAttr(attribute, value, context) : value;
+			}
+			return object;
+		}
+
+
+		@Override
+		public Part update(ElementDescriptor<Part> descriptor, Part object, String text, ParserContext context) throws XmlObjectPullParserException
+		{
+			if (object.value == null)
+			{
+				// attributes take precedence over text
+				object.value = text;
+				object.isStatic = isStatic(text);
+			}
+			return object;
+		}
+	};
+
+	private final static ElementDescriptor<Part> SCHEME = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "scheme"), PART_BUILDER);
+	private final static ElementDescriptor<Part> AUTHORITY = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "authority"), PART_BUILDER);
+	private final static ElementDescriptor<Part> PATH = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "path"), PART_BUILDER);
+	private final static ElementDescriptor<Part> APPEND_PATH = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "append-path"), PART_BUILDER);
+	private final static ElementDescriptor<Part> FRAGMENT = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "fragment"), PART_BUILDER);
 	private final static ElementDescriptor<QueryParameter> PARAMETER = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "query-parameter"),
 		new BaseAndroidObjectBuilder<QueryParameter>()
 		{
@@ -123,6 +227,10 @@ public class AndroidUriObjectBuilder extends BaseAndroidObjectBuilder<Uri>
 				{
 					object.key = value; // don't format here, we format when we add it to the builder
 				}
+				else if (attribute == ATTR_ENCODED)
+				{
+					object.isEncoded = getBooleanAttr(attribute, context);
+				}
 				return object;
 			}
 
@@ -137,22 +245,47 @@ public class AndroidUriObjectBuilder extends BaseAndroidObjectBuilder<Uri>
 		});
 
 
+	static
+	{
+		CacheManager.register(new CacheManager.TrimmableCache()
+		{
+			@Override
+			public long getRetainedSize()
+			{
+				return retainedSize(ENCODED_TEXT) + retainedSize(ENCODED_PATH_TEXT) + retainedSize(ENCODED_VALUES) + retainedSize(ENCODED_PATH_VALUES);
+			}
+
+
+			@Override
+			public void clear()
+			{
+				ENCODED_TEXT.evictAll();
+				ENCODED_PATH_TEXT.evictAll();
+				ENCODED_VALUES.evictAll();
+				ENCODED_PATH_VALUES.evictAll();
+			}
+		}, CacheManager.TIER_MEDIUM);
+	}
+
+
 	/**
-	 * Returns the builder for the current Uri instance, creating one if necessary.
-	 *
-	 * @param context
-	 *            A {@link ParserContext}.
-	 * @return The {@link android.net.Uri.Builder} of the current instance.
+	 * Returns a rough estimate of the memory retained by the given cache in bytes.
 	 */
-	private Uri.Builder getBuilder(ParserContext context)
+	private static long retainedSize(LruCache<String, String> cache)
 	{
-		Uri.Builder builder = (Uri.Builder) context.getState();
-		if (builder == null)
+		long result = 0;
+		for (Map.Entry<String, String> entry : cache.snapshot().entrySet())
 		{
-			builder = new Uri.Builder();
-			context.setState(builder);
+			result += (entry.getKey().length() + entry.getValue().length()) * 2;
 		}
-		return builder;
+		return result;
+	}
+
+
+	@Override
+	protected UriState newState(ParserContext context)
+	{
+		return new UriState();
 	}
 
 
@@ -162,19 +295,19 @@ public class AndroidUriObjectBuilder extends BaseAndroidObjectBuilder<Uri>
 	{
 		if (attribute == ATTR_SCHEME)
 		{
-			getBuilder(context).scheme(getCharSequenceAttr(attribute, value, context).toString());
+			getState(context).scheme = getCharSequenceAttr(attribute, value, context).toString();
 		}
 		if (attribute == ATTR_AUTHORITY)
 		{
-			getBuilder(context).authority(getCharSequenceAttr(attribute, value, context).toString());
+			getState(context).setAuthority(encodeAttr(attribute, value, PART_ENCODER, context));
 		}
 		if (attribute == ATTR_PATH)
 		{
-			getBuilder(context).path(getCharSequenceAttr(attribute, value, context).toString());
+			getState(context).setPath(encodeAttr(attribute, value, PATH_ENCODER, context));
 		}
 		if (attribute == ATTR_FRAGMENT)
 		{
-			getBuilder(context).fragment(getCharSequenceAttr(attribute, value, context).toString());
+			getState(context).fragment = encodeAttr(attribute, value, PART_ENCODER, context);
 		}
 		return object;
 	}
@@ -200,62 +333,52 @@ public class AndroidUriObjectBuilder extends BaseAndroidObjectBuilder<Uri>
 	{
 		if (object != null)
 		{
-			Uri.Builder builder = object.buildUpon();
-			context.setState(builder);
+			// continue with the parts of the Uri we got as text
+			getState(context).setUri(object);
 			object = null;
 		}
 
-		if (child instanceof String || child == null)
+		if (child instanceof Part)
 		{
-			String text = child == null ? null : format((CharSequence) child, context).toString();
+			Part part = (Part) child;
 			if (childDescriptor == SCHEME)
 			{
-				if (child != null)
+				if (part.value != null)
 				{
-					getBuilder(context).scheme(text);
+					getState(context).scheme = format(part.value, context).toString();
 				}
 			}
 			else if (childDescriptor == AUTHORITY)
 			{
-				if (child != null)
+				if (part.value != null)
 				{
-					getBuilder(context).authority(text);
+					getState(context).setAuthority(encode(part.value, part.isStatic, part.isEncoded ? ENCODED_PART_ENCODER : PART_ENCODER, context));
 				}
 			}
 			else if (childDescriptor == PATH)
 			{
-				if (child == null)
-				{
-					getBuilder(context).path("");
-				}
-				else
-				{
-					getBuilder(context).path(text);
-				}
+				getState(context).setPath(
+					part.value == null ? "" : encode(part.value, part.isStatic, part.isEncoded ? ENCODED_PATH_ENCODER : PATH_ENCODER, context));
 			}
 			else if (childDescriptor == FRAGMENT)
 			{
-				if (child != null)
+				if (part.value != null)
 				{
-					getBuilder(context).fragment(text);
+					getState(context).fragment = encode(part.value, part.isStatic, part.isEncoded ? ENCODED_PART_ENCODER : PART_ENCODER, context);
 				}
 			}
 			else if (childDescriptor == APPEND_PATH)
 			{
-				if (child == null)
-				{
-					getBuilder(context).appendPath("");
-				}
-				else
-				{
-					getBuilder(context).appendPath(text);
-				}
+				getState(context).appendPath(
+					part.value == null ? "" : encode(part.value, part.isStatic, part.isEncoded ? ENCODED_PART_ENCODER : PART_ENCODER, context));
 			}
 		}
 		else if (childDescriptor == PARAMETER)
 		{
 			QueryParameter param = (QueryParameter) child;
-			getBuilder(context).appendQueryParameter(format(param.key, context).toString(), format(param.value, context).toString());
+			PartEncoder encoder = param.isEncoded ? ENCODED_PART_ENCODER : PART_ENCODER;
+			getState(context).appendQueryParameter(encode(param.key, isStatic(param.key), encoder, context),
+				encode(param.value, isStatic(param.value), encoder, context));
 		}
 		return object;
 	}
@@ -267,13 +390,318 @@ public class AndroidUriObjectBuilder extends BaseAndroidObjectBuilder<Uri>
 		if (object == null)
 		{
 			// we're done, build the Uri
-			object = getBuilder(context).build();
+			object = getState(context).build();
 		}
 		// don't forget to clear the state for the next object
-		context.setState(null);
+		setState(context, null);
 		return object;
 	}
 
+
+	/**
+	 * Returns whether the given raw value is free of placeholders.
+	 */
+	private static boolean isStatic(String value)
+	{
+		return value == null || value.indexOf('{') < 0;
+	}
+
+
+	/**
+	 * Returns the encoded value of the given attribute of the Uri element.
+	 */
+	private String encodeAttr(QualifiedName attribute, String value, PartEncoder encoder, ParserContext context)
+	{
+		boolean isStatic = isStatic(value);
+		return encode(isStatic ? getCharSequenceAttr(attribute, value, context) : value, isStatic, encoder, context);
+	}
+
+
+	/**
+	 * Formats and encodes the given value like {@link Uri.Builder} does.
+	 *
+	 * @param value
+	 *            The raw value, may be <code>null</code>.
+	 * @param isStatic
+	 *            <code>true</code> if the value doesn't contain any placeholders.
+	 * @param encoder
+	 *            The {@link PartEncoder} to use.
+	 * @param context
+	 *            A {@link ParserContext}.
+	 * @return The encoded value or <code>null</code> if value was <code>null</code>.
+	 */
+	private String encode(CharSequence value, boolean isStatic, PartEncoder encoder, ParserContext context)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+
+		if (isStatic)
+		{
+			return encoder.encodeText(value).toString();
+		}
+		return format(value, context, encoder).toString();
+	}
+
+	/**
+	 * A {@link StringFormatter.Encoder} that encodes the parts of a Uri like {@link Uri.Builder} does. Static text and token values are encoded only once per
+	 * distinct value.
+	 */
+	private final static class PartEncoder implements StringFormatter.Encoder
+	{
+		private final String mAllow;
+		private final LruCache<String, String> mTextCache;
+		private final LruCache<String, String> mValueCache;
+
+
+		/**
+		 * Create a new {@link PartEncoder}.
+		 *
+		 * @param allow
+		 *            Additional characters that don't need to be encoded, see {@link Uri#encode(String, String)}.
+		 * @param textCache
+		 *            The cache for encoded text or <code>null</code> if text is already encoded.
+		 * @param valueCache
+		 *            The cache for encoded token values.
+		 */
+		public PartEncoder(String allow, LruCache<String, String> textCache, LruCache<String, String> valueCache)
+		{
+			mAllow = allow;
+			mTextCache = textCache;
+			mValueCache = valueCache;
+		}
+
+
+		@Override
+		public CharSequence encodeText(CharSequence text)
+		{
+			if (mTextCache == null)
+			{
+				// the text is already encoded
+				return text;
+			}
+			return encode(text, mTextCache);
+		}
+
+
+		@Override
+		public CharSequence encodeValue(CharSequence value)
+		{
+			if (value instanceof UriEncodedValue)
+			{
+				// the resolver returned a value that's already encoded
+				return value;
+			}
+			return encode(value, mValueCache);
+		}
+
+
+		private CharSequence encode(CharSequence value, LruCache<String, String> cache)
+		{
+			if (value.length() == 0)
+			{
+				return value;
+			}
+
+			String decoded = value.toString();
+			String encoded = cache.get(decoded);
+			if (encoded == null)
+			{
+				encoded = Uri.encode(decoded, mAllow);
+				cache.put(decoded, encoded);
+			}
+			return encoded;
+		}
+	}
+
+	/**
+	 * The encoded parts of the Uri that's currently being built. This follows the rules of {@link Uri.Builder}.
+	 */
+	static final class UriState
+	{
+		/**
+		 * The scheme, it's never encoded.
+		 */
+		String scheme;
+
+		/**
+		 * The encoded scheme specific part of an opaque Uri, if any.
+		 */
+		private String mOpaquePart;
+
+		/**
+		 * The encoded authority.
+		 */
+		private String mAuthority;
+
+		/**
+		 * The encoded path.
+		 */
+		private StringBuilder mPath;
+
+		/**
+		 * The encoded query.
+		 */
+		private StringBuilder mQuery;
+
+		/**
+		 * The encoded fragment.
+		 */
+		String fragment;
+
+
+		/**
+		 * Initialize all parts from the given {@link Uri}.
+		 */
+		void setUri(Uri uri)
+		{
+			scheme = uri.getScheme();
+			fragment = uri.getEncodedFragment();
+			if (uri.isOpaque())
+			{
+				mOpaquePart = uri.getEncodedSchemeSpecificPart();
+				mAuthority = null;
+				mPath = null;
+				mQuery = null;
+			}
+			else
+			{
+				mOpaquePart = null;
+				mAuthority = uri.getEncodedAuthority();
+				setPath(uri.getEncodedPath());
+				String query = uri.getEncodedQuery();
+				mQuery = query == null ? null : new StringBuilder(query);
+			}
+		}
+
+
+		void setAuthority(String encodedAuthority)
+		{
+			mOpaquePart = null;
+			mAuthority = encodedAuthority;
+		}
+
+
+		void setPath(String encodedPath)
+		{
+			mOpaquePart = null;
+			if (encodedPath == null)
+			{
+				mPath = null;
+			}
+			else if (mPath == null)
+			{
+				mPath = new StringBuilder(encodedPath);
+			}
+			else
+			{
+				mPath.setLength(0);
+				mPath.append(encodedPath);
+			}
+		}
+
+
+		void appendPath(String encodedSegment)
+		{
+			mOpaquePart = null;
+			if (mPath == null)
+			{
+				mPath = new StringBuilder(encodedSegment.length() + 16);
+			}
+			int length = mPath.length();
+			if (length == 0 || mPath.charAt(length - 1) != '/')
+			{
+				mPath.append('/');
+			}
+			mPath.append(encodedSegment);
+		}
+
+
+		void appendQueryParameter(String encodedKey, String encodedValue)
+		{
+			mOpaquePart = null;
+			if (mQuery == null)
+			{
+				mQuery = new StringBuilder(64);
+			}
+			else
+			{
+				mQuery.append('&');
+			}
+			mQuery.append(encodedKey).append('=').append(encodedValue);
+		}
+
+
+		/**
+		 * Build the {@link Uri} from the current parts.
+		 */
+		Uri build()
+		{
+			StringBuilder result = new StringBuilder(128);
+			if (scheme != null)
+			{
+				result.append(scheme).append(':');
+			}
+
+			if (mOpaquePart != null)
+			{
+				if (scheme == null)
+				{
+					throw new UnsupportedOperationException("An opaque URI must have a scheme.");
+				}
+				result.append(mOpaquePart);
+			}
+			else
+			{
+				if (mAuthority != null)
+				{
+					result.append("//").append(mAuthority);
+				}
+				if (mPath != null && mPath.length() > 0)
+				{
+					if ((scheme != null || mAuthority != null) && mPath.charAt(0) != '/')
+					{
+						// paths of Uris with a scheme or authority must be absolute
+						result.append('/');
+					}
+					result.append(mPath);
+				}
+				if (mQuery != null)
+				{
+					result.append('?').append(mQuery);
+				}
+			}
+
+			if (fragment != null)
+			{
+				result.append('#').append(fragment);
+			}
+			return Uri.parse(result.toString());
+		}
+	}
+
+	/**
+	 * A part of a Uri given as a child element.
+	 */
+	private static class Part
+	{
+		/**
+		 * The raw value of the part or its resolved value if it's static.
+		 */
+		private CharSequence value;
+
+		/**
+		 * Whether the value is free of placeholders.
+		 */
+		private boolean isStatic;
+
+		/**
+		 * Whether the literal text of the value is already encoded.
+		 */
+		private boolean isEncoded;
+	}
+
 	/**
 	 * Helper class for query parameters.
 	 */
@@ -288,5 +716,10 @@ public class AndroidUriObjectBuilder extends BaseAndroidObjectBuilder<Uri>
 		 * The parameter value.
 		 */
 		private String value;
+
+		/**
+		 * Whether the literal text of key and value is already encoded.
+		 */
+		private boolean isEncoded;
 	}
 }
@@ -18,13 +18,16 @@
 package org.dmfs.android.xmlmagic.builder;
 
 import org.dmfs.android.xmlmagic.AndroidParserContext;
+import org.dmfs.android.xmlmagic.ResourceValueCache;
 import org.dmfs.android.xmlmagic.StringFormatter;
 import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITypedTokenResolver;
 import org.dmfs.xmlobjects.QualifiedName;
 import org.dmfs.xmlobjects.builder.AbstractObjectBuilder;
 import org.dmfs.xmlobjects.pull.ParserContext;
 
 import android.content.res.Resources;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Xml;
 
@@ -54,6 +57,23 @@ public abstract class BaseAndroidObjectBuilder<T> extends AbstractObjectBuilder<
 	}
 
 
+	/**
+	 * Get the {@link ResourceValueCache} from the given {@link ParserContext}.
+	 *
+	 * @param context
+	 *            A {@link ParserContext}.
+	 * @return The {@link ResourceValueCache} of the current context or <code>null</code> if the context is not an {@link AndroidParserContext}.
+	 */
+	protected final ResourceValueCache getResourceValues(ParserContext context)
+	{
+		if (context instanceof AndroidParserContext)
+		{
+			return ((AndroidParserContext) context).getResourceValues();
+		}
+		return null;
+	}
+
+
 	protected final ITokenResolver getTokenResolver(ParserContext context)
 	{
 		if (context instanceof AndroidParserContext)
@@ -64,19 +84,145 @@ public abstract class BaseAndroidObjectBuilder<T> extends AbstractObjectBuilder<
 	}
 
 
+	/**
+	 * Returns whether the value that's currently being built is going to be ignored, because a parent element has already determined its result. Builders may
+	 * use this to skip expensive operations. See {@link AndroidParserContext#skipEvaluation()}.
+	 *
+	 * @param context
+	 *            A {@link ParserContext}.
+	 * @return <code>true</code> if the current value is not going to be used.
+	 */
+	protected final boolean isSkippingEvaluation(ParserContext context)
+	{
+		return context instanceof AndroidParserContext && ((AndroidParserContext) context).isSkippingEvaluation();
+	}
+
+
+	/**
+	 * Mark the result of the current load as dynamic, see {@link AndroidParserContext#markDynamic()}. This has no effect if the given context is not an
+	 * {@link AndroidParserContext}.
+	 *
+	 * @param context
+	 *            A {@link ParserContext}.
+	 */
+	protected final void markDynamic(ParserContext context)
+	{
+		if (context instanceof AndroidParserContext)
+		{
+			((AndroidParserContext) context).markDynamic();
+		}
+	}
+
+
+	/**
+	 * Stop evaluating values until {@link #resumeEvaluation(ParserContext)} is called. This has no effect if the given context is not an
+	 * {@link AndroidParserContext}.
+	 *
+	 * @param context
+	 *            A {@link ParserContext}.
+	 */
+	protected final void skipEvaluation(ParserContext context)
+	{
+		if (context instanceof AndroidParserContext)
+		{
+			((AndroidParserContext) context).skipEvaluation();
+		}
+	}
+
+
+	/**
+	 * Resume evaluating values after a call to {@link #skipEvaluation(ParserContext)}.
+	 *
+	 * @param context
+	 *            A {@link ParserContext}.
+	 */
+	protected final void resumeEvaluation(ParserContext context)
+	{
+		if (context instanceof AndroidParserContext)
+		{
+			((AndroidParserContext) context).resumeEvaluation();
+		}
+	}
+
+
 	protected final CharSequence format(CharSequence value, ParserContext context)
 	{
-		ITokenResolver resolver = getTokenResolver(context);
-		if (resolver == null)
+		return format(value, context, null);
+	}
+
+
+	/**
+	 * Format the given value into a plain {@link String}. This is cheaper than {@link #format(CharSequence, ParserContext)} if the value is a single token.
+	 *
+	 * @param value
+	 *            The value to format.
+	 * @param context
+	 *            A {@link ParserContext}.
+	 * @return The formatted value.
+	 */
+	protected final String formatString(CharSequence value, ParserContext context)
+	{
+		if (value != null && TextUtils.indexOf(value, '{') >= 0)
 		{
-			return value;
+			// the value contains placeholders, so the result can't be cached
+			markDynamic(context);
+		}
+
+		return StringFormatter.formatString(value, getTokenResolver(context), 5);
+	}
+
+
+	/**
+	 * Format the given value and encode the result with the given {@link StringFormatter.Encoder}. The value is encoded even if there is no resolver.
+	 *
+	 * @param value
+	 *            The value to format.
+	 * @param context
+	 *            A {@link ParserContext}.
+	 * @param encoder
+	 *            The {@link StringFormatter.Encoder} or <code>null</code> to return the formatted value as it is.
+	 * @return The formatted and encoded value.
+	 */
+	protected final CharSequence format(CharSequence value, ParserContext context, StringFormatter.Encoder encoder)
+	{
+		if (value != null && TextUtils.indexOf(value, '{') >= 0)
+		{
+			// the value contains placeholders, so the result can't be cached
+			markDynamic(context);
 		}
-		return StringFormatter.format(value, resolver, 5);
+
+		return StringFormatter.format(value, getTokenResolver(context), 5, encoder);
+	}
+
+
+	/**
+	 * Returns the token if the given value consists of exactly one placeholder token that can be resolved by a typed resolver. String resource tokens and
+	 * tokens with a format are excluded, because their values need to be formatted.
+	 *
+	 * @param value
+	 *            The raw value of an attribute.
+	 * @return The token or <code>null</code> if the value is not a single token.
+	 */
+	protected static String singleToken(String value)
+	{
+		int length = value == null ? 0 : value.length();
+		if (length < 3 || value.charAt(0) != '{' || value.charAt(length - 1) != '}' || value.indexOf('}') != length - 1)
+		{
+			return null;
+		}
+		String token = value.substring(1, length - 1);
+		return token.startsWith("@string/") || token.indexOf('|') >= 0 ? null : token;
 	}
 
 
 	protected CharSequence getCharSequenceAttr(QualifiedName attribute, String value, ParserContext context)
 	{
+		if (isSkippingEvaluation(context))
+		{
+			// the result is ignored anyway
+			return value;
+		}
+
 		Resources resources = getResources(context);
 		AttributeSet p = Xml.asAttributeSet(context.getXmlPullParser());
 		int res = p.getAttributeResourceValue(attribute.namespace, attribute.name, 0 /* the invalid resource id */);
@@ -86,7 +232,8 @@ public abstract class BaseAndroidObjectBuilder<T> extends AbstractObjectBuilder<
 		}
 		else if (resources != null)
 		{
-			return resources.getText(res);
+			CharSequence text = getResourceValues(context).getText(resources, res);
+			return text == null ? value : text;
 		}
 		return value;
 	}
@@ -107,14 +254,30 @@ public abstract class BaseAndroidObjectBuilder<T> extends AbstractObjectBuilder<
 	 */
 	protected Integer getIntegerAttr(QualifiedName attribute, boolean resolveInt, ParserContext context)
 	{
+		if (isSkippingEvaluation(context))
+		{
+			// the result is ignored anyway
+			return 0;
+		}
+
 		Resources resources = getResources(context);
 		AttributeSet p = Xml.asAttributeSet(context.getXmlPullParser());
 		int res = p.getAttributeResourceValue(attribute.namespace, attribute.name, 0 /* the invalid resource id */);
 		if (res == 0)
 		{
+			String value = p.getAttributeValue(attribute.namespace, attribute.name);
+			String token = singleToken(value);
+			ITokenResolver resolver = getTokenResolver(context);
+			if (token != null && resolver instanceof ITypedTokenResolver)
+			{
+				// the value is a single token, no need to format it into a string first
+				markDynamic(context);
+				return ((ITypedTokenResolver) resolver).resolveInt(token, 0);
+			}
+
 			try
 			{
-				return Integer.parseInt(format(p.getAttributeValue(attribute.namespace, attribute.name), context).toString());
+				return Integer.parseInt(format(value, context).toString());
 			}
 			catch (NumberFormatException e)
 			{
@@ -124,14 +287,8 @@ public abstract class BaseAndroidObjectBuilder<T> extends AbstractObjectBuilder<
 		}
 		else if (resources != null && resolveInt)
 		{
-			try
-			{
-				return resources.getInteger(res);
-			}
-			catch (Resources.NotFoundException e)
-			{
-				// fall through
-			}
+			// returns the resource id if it doesn't refer to an integer
+			return getResourceValues(context).getInteger(resources, res, res);
 		}
 		return res;
 	}
@@ -148,17 +305,33 @@ public abstract class BaseAndroidObjectBuilder<T> extends AbstractObjectBuilder<
 	 */
 	protected boolean getBooleanAttr(QualifiedName attribute, ParserContext context)
 	{
+		if (isSkippingEvaluation(context))
+		{
+			// the result is ignored anyway
+			return false;
+		}
+
 		Resources resources = getResources(context);
 		AttributeSet p = Xml.asAttributeSet(context.getXmlPullParser());
 		int res = p.getAttributeResourceValue(attribute.namespace, attribute.name, 0 /* the invalid resource id */);
 		if (res == 0)
 		{
-			String value = format(p.getAttributeValue(attribute.namespace, attribute.name), context).toString();
+			String value = p.getAttributeValue(attribute.namespace, attribute.name);
+			String token = singleToken(value);
+			ITokenResolver resolver = getTokenResolver(context);
+			if (token != null && resolver instanceof ITypedTokenResolver)
+			{
+				// the value is a single token, no need to format it into a string first
+				markDynamic(context);
+				return ((ITypedTokenResolver) resolver).resolveBoolean(token, false);
+			}
+
+			value = format(value, context).toString();
 			return value.equalsIgnoreCase("true") || value.equals("1");
 		}
 		else if (resources != null)
 		{
-			return resources.getBoolean(res);
+			return getResourceValues(context).getBoolean(resources, res, false);
 		}
 		return false;
 	}
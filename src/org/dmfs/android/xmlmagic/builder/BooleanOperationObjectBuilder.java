@@ -42,6 +42,9 @@ import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
  * In this case the builder results in <code>true</code> if one of the columns <code>modified</code> or <code>deleted</code> in the given cursor contains a
  * value that's evaluated to <code>true</code>.
  * <p/>
+ * Child elements are evaluated lazily. Once the result is determined (e.g. an <code>or</code> has found a <code>true</code> value) the remaining children are
+ * not evaluated anymore. In particular no placeholder tokens will be resolved.
+ * <p/>
  * The value of the result can be inverted by specifying the attribute <code>invert="true"</code>. This can be used to implement the <code>not</code> operation
  * like so:
  * 
@@ -55,7 +58,7 @@ import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
  *
  * @author Marten Gajda <marten@dmfs.org>
  */
-public class BooleanOperationObjectBuilder extends BaseAndroidObjectBuilder<Boolean>
+public class BooleanOperationObjectBuilder extends AbstractStatefulObjectBuilder<Boolean, BooleanOperationObjectBuilder.OperationState>
 {
 	/**
 	 * The invert parameter.
@@ -74,10 +77,17 @@ public class BooleanOperationObjectBuilder extends BaseAndroidObjectBuilder<Bool
 	}
 
 
+	@Override
+	protected OperationState newState(ParserContext context)
+	{
+		return new OperationState();
+	}
+
+
 	@Override
 	public Boolean get(ElementDescriptor<Boolean> descriptor, Boolean recycle, ParserContext context) throws XmlObjectPullParserException
 	{
-		context.setState(false);
+		initState(context);
 		return null;
 	}
 
@@ -89,7 +99,7 @@ public class BooleanOperationObjectBuilder extends BaseAndroidObjectBuilder<Bool
 
 		if (attribute == ATTR_INVERT)
 		{
-			context.setState(getBooleanAttr(attribute, context));
+			getState(context).invert = getBooleanAttr(attribute, context);
 		}
 
 		return object;
@@ -106,23 +116,70 @@ public class BooleanOperationObjectBuilder extends BaseAndroidObjectBuilder<Bool
 			return object;
 		}
 
-		if (object == null)
+		OperationState state = getState(context);
+		if (state.skipping)
+		{
+			// the result has been determined already, the value of this child doesn't matter
+			return object;
+		}
+
+		boolean value = (Boolean) child;
+		if (!state.hasValue)
 		{
-			return (Boolean) child;
+			state.value = value;
+			state.hasValue = true;
 		}
-		return mOperation.calculate(object, (Boolean) child);
+		else
+		{
+			state.value = mOperation.calculate(state.value, value);
+		}
+
+		if (mOperation.isDetermined(state.value))
+		{
+			// no need to evaluate the remaining children
+			state.skipping = true;
+			skipEvaluation(context);
+		}
+		return object;
 	}
 
 
 	@Override
 	public Boolean finish(ElementDescriptor<Boolean> descriptor, Boolean object, ParserContext context) throws XmlObjectPullParserException
 	{
-		if (object == null)
+		OperationState state = getState(context);
+		if (state.skipping)
 		{
-			object = false;
+			resumeEvaluation(context);
 		}
+		// no value results in false
+		return state.invert != (state.hasValue && state.value);
+	}
 
-		return (Boolean) context.getState() ? !object : object;
+	/**
+	 * The state of a boolean operation element.
+	 */
+	static final class OperationState
+	{
+		/**
+		 * Whether to invert the result.
+		 */
+		boolean invert;
+
+		/**
+		 * Whether any boolean child has been seen yet.
+		 */
+		boolean hasValue;
+
+		/**
+		 * The intermediate result.
+		 */
+		boolean value;
+
+		/**
+		 * Whether the result has been determined and the evaluation of the remaining children is skipped.
+		 */
+		boolean skipping;
 	}
 
 	public enum BooleanOperation
@@ -133,6 +190,13 @@ public class BooleanOperationObjectBuilder extends BaseAndroidObjectBuilder<Bool
 			{
 				return left || right;
 			}
+
+
+			@Override
+			public boolean isDetermined(boolean intermediate)
+			{
+				return intermediate;
+			}
 		},
 		and {
 			@Override
@@ -140,6 +204,13 @@ public class BooleanOperationObjectBuilder extends BaseAndroidObjectBuilder<Bool
 			{
 				return left && right;
 			}
+
+
+			@Override
+			public boolean isDetermined(boolean intermediate)
+			{
+				return !intermediate;
+			}
 		},
 		xor {
 			@Override
@@ -147,8 +218,25 @@ public class BooleanOperationObjectBuilder extends BaseAndroidObjectBuilder<Bool
 			{
 				return left != right;
 			}
+
+
+			@Override
+			public boolean isDetermined(boolean intermediate)
+			{
+				return false;
+			}
 		};
 
 		public abstract boolean calculate(boolean left, boolean right);
+
+
+		/**
+		 * Returns whether the result of the operation is determined by the given intermediate result, regardless of the values of any remaining operands.
+		 *
+		 * @param intermediate
+		 *            The intermediate result.
+		 * @return <code>true</code> if the result won't change anymore.
+		 */
+		public abstract boolean isDetermined(boolean intermediate);
 	}
 }
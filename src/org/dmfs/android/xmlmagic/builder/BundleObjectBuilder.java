@@ -17,7 +17,11 @@
 
 package org.dmfs.android.xmlmagic.builder;
 
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.dmfs.android.xmlmagic.Model;
 import org.dmfs.xmlobjects.ElementDescriptor;
@@ -26,8 +30,14 @@ import org.dmfs.xmlobjects.builder.AbstractObjectBuilder;
 import org.dmfs.xmlobjects.pull.ParserContext;
 import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
 
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Build.VERSION;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.util.Size;
+import android.util.SizeF;
+import android.util.SparseArray;
 
 
 /**
@@ -61,7 +71,11 @@ import android.os.Parcelable;
  * }
  * </pre>
  * <p/>
- * TODO: Add support for missing types
+ * Lists of {@link Integer}s, {@link String}s, {@link CharSequence}s or {@link Parcelable}s are stored using the respective typed method. Primitive arrays of
+ * <code>int</code>, <code>long</code>, <code>double</code>, <code>float</code> and <code>boolean</code> are stored as is, without boxing.
+ * <p/>
+ * The method to store a value is determined by the class of the value. Values of classes that are not supported out of the box can be stored by registering a
+ * {@link BundleWriter} with {@link #registerWriter(Class, BundleWriter)}.
  *
  * @author Marten Gajda <marten@dmfs.org>
  */
@@ -138,78 +152,387 @@ public class BundleObjectBuilder extends AbstractObjectBuilder<Bundle>
 		});
 
 
-	@Override
-	public Bundle get(ElementDescriptor<Bundle> descriptor, Bundle recycle, ParserContext context) throws XmlObjectPullParserException
+	/**
+	 * The registered {@link BundleWriter}s in the order they are checked.
+	 */
+	private final static List<WriterRegistration> WRITERS = new CopyOnWriteArrayList<WriterRegistration>();
+
+	/**
+	 * The {@link BundleWriter}s by concrete value class. Classes without a writer are mapped to {@link #NO_WRITER}.
+	 */
+	private final static ConcurrentHashMap<Class<?>, BundleWriter<Object>> WRITER_CACHE = new ConcurrentHashMap<Class<?>, BundleWriter<Object>>(32);
+
+	/**
+	 * The number of calls to {@link #registerWriter(Class, BundleWriter)}. A writer is only cached if no writer has been registered while it was looked up.
+	 * Guarded by {@link #WRITERS}.
+	 */
+	private static int sWritersVersion;
+
+	/**
+	 * A marker for classes that can't be written to a {@link Bundle}. It's compared by identity only.
+	 */
+	private final static BundleWriter<Object> NO_WRITER = new BundleWriter<Object>()
 	{
-		if (recycle != null)
+		@Override
+		public void write(Bundle bundle, String key, Object value)
 		{
-			recycle.clear();
-			return recycle;
+			// nothing to do
 		}
-		return new Bundle();
-	}
+	};
 
-
-	@Override
-	public <V> Bundle update(ElementDescriptor<Bundle> descriptor, Bundle object, ElementDescriptor<V> childDescriptor, V child, ParserContext context)
-		throws XmlObjectPullParserException
+	static
 	{
-		if (child instanceof ValueHolder)
+		// Note: the order matters, more specific types must be added before more generic types.
+		addWriter(String.class, new BundleWriter<String>()
 		{
-			ValueHolder valueHolder = (ValueHolder) child;
-			if (valueHolder.value instanceof String)
+			@Override
+			public void write(Bundle bundle, String key, String value)
 			{
-				object.putString(valueHolder.key, (String) valueHolder.value);
+				bundle.putString(key, value);
 			}
-			if (valueHolder.value instanceof CharSequence)
+		});
+		addWriter(CharSequence.class, new BundleWriter<CharSequence>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, CharSequence value)
 			{
-				object.putCharSequence(valueHolder.key, (CharSequence) valueHolder.value);
+				bundle.putCharSequence(key, value);
 			}
-			else if (valueHolder.value instanceof Integer)
+		});
+		addWriter(Integer.class, new BundleWriter<Integer>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Integer value)
 			{
-				object.putInt(valueHolder.key, (Integer) valueHolder.value);
+				bundle.putInt(key, value);
 			}
-			else if (valueHolder.value instanceof Boolean)
+		});
+		addWriter(Long.class, new BundleWriter<Long>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Long value)
 			{
-				object.putBoolean(valueHolder.key, (Boolean) valueHolder.value);
+				bundle.putLong(key, value);
 			}
-			else if (valueHolder.value instanceof Bundle)
+		});
+		addWriter(Double.class, new BundleWriter<Double>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Double value)
 			{
-				object.putBundle(valueHolder.key, (Bundle) valueHolder.value);
+				bundle.putDouble(key, value);
 			}
-			else if (valueHolder.value instanceof Parcelable)
+		});
+		addWriter(Float.class, new BundleWriter<Float>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Float value)
 			{
-				object.putParcelable(valueHolder.key, (Parcelable) valueHolder.value);
+				bundle.putFloat(key, value);
 			}
-			else if (valueHolder.value instanceof String[])
+		});
+		addWriter(Short.class, new BundleWriter<Short>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Short value)
 			{
-				object.putStringArray(valueHolder.key, (String[]) valueHolder.value);
+				bundle.putShort(key, value);
 			}
-			if (valueHolder.value instanceof CharSequence[])
+		});
+		addWriter(Byte.class, new BundleWriter<Byte>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Byte value)
 			{
-				object.putCharSequenceArray(valueHolder.key, (CharSequence[]) valueHolder.value);
+				bundle.putByte(key, value);
 			}
-			else if (valueHolder.value instanceof int[])
+		});
+		addWriter(Character.class, new BundleWriter<Character>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Character value)
 			{
-				object.putIntArray(valueHolder.key, (int[]) valueHolder.value);
+				bundle.putChar(key, value);
 			}
-			else if (valueHolder.value instanceof boolean[])
+		});
+		addWriter(Boolean.class, new BundleWriter<Boolean>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Boolean value)
 			{
-				object.putBooleanArray(valueHolder.key, (boolean[]) valueHolder.value);
+				bundle.putBoolean(key, value);
 			}
-			else if (valueHolder.value instanceof Parcelable[])
+		});
+		addWriter(Bundle.class, new BundleWriter<Bundle>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Bundle value)
 			{
-				object.putParcelableArray(valueHolder.key, (Parcelable[]) valueHolder.value);
+				bundle.putBundle(key, value);
 			}
-			else if (valueHolder.value instanceof ArrayList)
+		});
+		if (VERSION.SDK_INT >= 21)
+		{
+			addSizeWriters();
+		}
+		addWriter(Parcelable.class, new BundleWriter<Parcelable>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Parcelable value)
+			{
+				bundle.putParcelable(key, value);
+			}
+		});
+		addWriter(String[].class, new BundleWriter<String[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, String[] value)
+			{
+				bundle.putStringArray(key, value);
+			}
+		});
+		addWriter(CharSequence[].class, new BundleWriter<CharSequence[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, CharSequence[] value)
+			{
+				bundle.putCharSequenceArray(key, value);
+			}
+		});
+		addWriter(int[].class, new BundleWriter<int[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, int[] value)
+			{
+				bundle.putIntArray(key, value);
+			}
+		});
+		addWriter(long[].class, new BundleWriter<long[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, long[] value)
 			{
-				// FIXME: we can't trust that the generic type is String. We have to check the type of the first element, if there is any
-				// object.putStringArrayList(valueHolder.key, (ArrayList<String>) valueHolder.value);
-				// object.putStringArrayList
-				// object.putIntegerArrayList
-				// object.putCharSequenceArrayList
-				// object.putParcelableArrayList
+				bundle.putLongArray(key, value);
+			}
+		});
+		addWriter(double[].class, new BundleWriter<double[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, double[] value)
+			{
+				bundle.putDoubleArray(key, value);
+			}
+		});
+		addWriter(float[].class, new BundleWriter<float[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, float[] value)
+			{
+				bundle.putFloatArray(key, value);
+			}
+		});
+		addWriter(boolean[].class, new BundleWriter<boolean[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, boolean[] value)
+			{
+				bundle.putBooleanArray(key, value);
+			}
+		});
+		addWriter(byte[].class, new BundleWriter<byte[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, byte[] value)
+			{
+				bundle.putByteArray(key, value);
+			}
+		});
+		addWriter(short[].class, new BundleWriter<short[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, short[] value)
+			{
+				bundle.putShortArray(key, value);
+			}
+		});
+		addWriter(char[].class, new BundleWriter<char[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, char[] value)
+			{
+				bundle.putCharArray(key, value);
+			}
+		});
+		addWriter(Parcelable[].class, new BundleWriter<Parcelable[]>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Parcelable[] value)
+			{
+				bundle.putParcelableArray(key, value);
+			}
+		});
+		addWriter(ArrayList.class, new BundleWriter<ArrayList<?>>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, ArrayList<?> value)
+			{
+				putArrayList(bundle, key, value);
+			}
+		});
+		addWriter(SparseArray.class, new BundleWriter<SparseArray<?>>()
+		{
+			@SuppressWarnings("unchecked")
+			@Override
+			public void write(Bundle bundle, String key, SparseArray<?> value)
+			{
+				for (int i = 0, count = value.size(); i < count; ++i)
+				{
+					Object element = value.valueAt(i);
+					if (element != null && !(element instanceof Parcelable))
+					{
+						// only SparseArrays of Parcelables can be stored, ignore all others like putArrayList does
+						return;
+					}
+				}
+				bundle.putSparseParcelableArray(key, (SparseArray<? extends Parcelable>) value);
+			}
+		});
+		// this must be the last one, many of the types above are Serializable too
+		addWriter(Serializable.class, new BundleWriter<Serializable>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Serializable value)
+			{
+				bundle.putSerializable(key, value);
+			}
+		});
+	}
+
+
+	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+	private static void addSizeWriters()
+	{
+		addWriter(Size.class, new BundleWriter<Size>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, Size value)
+			{
+				bundle.putSize(key, value);
+			}
+		});
+		addWriter(SizeF.class, new BundleWriter<SizeF>()
+		{
+			@Override
+			public void write(Bundle bundle, String key, SizeF value)
+			{
+				bundle.putSizeF(key, value);
+			}
+		});
+	}
+
+
+	/**
+	 * Appends a built-in {@link BundleWriter} to the list of writers.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static void addWriter(Class<?> type, BundleWriter<?> writer)
+	{
+		WRITERS.add(new WriterRegistration(type, (BundleWriter) writer));
+	}
+
+
+	/**
+	 * Register a {@link BundleWriter} for values of the given type. Writers registered by this method take precedence over all writers registered earlier and
+	 * over the built-in writers. Values of sub-classes of the given type are written by the given writer as well, unless there is a more recently registered
+	 * writer for a more specific type.
+	 * <p/>
+	 * Note: writers should be registered before any bundles are built, e.g. in {@link android.app.Application#onCreate()}.
+	 *
+	 * @param type
+	 *            The class of the values the writer can write.
+	 * @param writer
+	 *            The {@link BundleWriter}.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> void registerWriter(Class<V> type, BundleWriter<? super V> writer)
+	{
+		synchronized (WRITERS)
+		{
+			WRITERS.add(0, new WriterRegistration(type, (BundleWriter<Object>) writer));
+			++sWritersVersion;
+			// the new writer may change the writer of any class that has been resolved already
+			WRITER_CACHE.clear();
+		}
+	}
+
+
+	/**
+	 * Returns the {@link BundleWriter} for values of the given class.
+	 *
+	 * @param valueClass
+	 *            The concrete class of a value.
+	 * @return The {@link BundleWriter} or <code>null</code> if values of this class can not be stored in a Bundle.
+	 */
+	private static BundleWriter<Object> getWriter(Class<?> valueClass)
+	{
+		BundleWriter<Object> writer = WRITER_CACHE.get(valueClass);
+		if (writer == null)
+		{
+			int version;
+			synchronized (WRITERS)
+			{
+				version = sWritersVersion;
+			}
+
+			writer = NO_WRITER;
+			for (WriterRegistration registration : WRITERS)
+			{
+				if (registration.type.isAssignableFrom(valueClass))
+				{
+					writer = registration.writer;
+					break;
+				}
+			}
+
+			synchronized (WRITERS)
+			{
+				// don't cache the result if a writer has been registered in the meantime, it might be stale
+				if (version == sWritersVersion)
+				{
+					WRITER_CACHE.put(valueClass, writer);
+				}
+			}
+		}
+		return writer == NO_WRITER ? null : writer;
+	}
+
+
+	@Override
+	public Bundle get(ElementDescriptor<Bundle> descriptor, Bundle recycle, ParserContext context) throws XmlObjectPullParserException
+	{
+		if (recycle != null)
+		{
+			recycle.clear();
+			return recycle;
+		}
+		return new Bundle();
+	}
+
 
+	@Override
+	public <V> Bundle update(ElementDescriptor<Bundle> descriptor, Bundle object, ElementDescriptor<V> childDescriptor, V child, ParserContext context)
+		throws XmlObjectPullParserException
+	{
+		if (child instanceof ValueHolder)
+		{
+			ValueHolder valueHolder = (ValueHolder) child;
+			if (valueHolder.value != null)
+			{
+				BundleWriter<Object> writer = getWriter(valueHolder.value.getClass());
+				if (writer != null)
+				{
+					writer.write(object, valueHolder.key, valueHolder.value);
+				}
 			}
 
 			// recycle the ValueHolder
@@ -218,6 +541,79 @@ public class BundleObjectBuilder extends AbstractObjectBuilder<Bundle>
 		return object;
 	}
 
+	/**
+	 * Puts the given {@link ArrayList} into the given {@link Bundle} using the most specific method for the type of its elements. The type of the elements is
+	 * determined in a single pass over the list. <code>null</code> elements are allowed. Empty lists and lists that contain only <code>null</code> elements are
+	 * stored as {@link String} lists. Lists of other or mixed types, like {@link Long}s, {@link Double}s or {@link Boolean}s, are stored as
+	 * {@link java.io.Serializable}.
+	 *
+	 * @param bundle
+	 *            The {@link Bundle} to update.
+	 * @param key
+	 *            The key of the list.
+	 * @param list
+	 *            The list.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void putArrayList(Bundle bundle, String key, ArrayList<?> list)
+	{
+		boolean integers = true;
+		boolean strings = true;
+		boolean charSequences = true;
+		boolean parcelables = true;
+
+		for (int i = 0, count = list.size(); i < count && (integers || charSequences || parcelables); ++i)
+		{
+			Object element = list.get(i);
+			if (element != null)
+			{
+				integers &= element instanceof Integer;
+				strings &= element instanceof String;
+				charSequences &= element instanceof CharSequence;
+				parcelables &= element instanceof Parcelable;
+			}
+		}
+
+		if (strings)
+		{
+			// note this also applies to empty lists
+			bundle.putStringArrayList(key, (ArrayList<String>) list);
+		}
+		else if (integers)
+		{
+			bundle.putIntegerArrayList(key, (ArrayList<Integer>) list);
+		}
+		else if (charSequences)
+		{
+			bundle.putCharSequenceArrayList(key, (ArrayList<CharSequence>) list);
+		}
+		else if (parcelables)
+		{
+			bundle.putParcelableArrayList(key, (ArrayList<Parcelable>) list);
+		}
+		else
+		{
+			// ArrayList is Serializable, there is no more specific method for these
+			bundle.putSerializable(key, list);
+		}
+	}
+
+	/**
+	 * A {@link BundleWriter} and the type of values it writes.
+	 */
+	private final static class WriterRegistration
+	{
+		final Class<?> type;
+		final BundleWriter<Object> writer;
+
+
+		public WriterRegistration(Class<?> type, BundleWriter<Object> writer)
+		{
+			this.type = type;
+			this.writer = writer;
+		}
+	}
+
 	/**
 	 * Private holder for bundle values.
 	 */
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.builder;
+
+import android.os.Bundle;
+
+
+/**
+ * Interface of a strategy that knows how to put values of a specific type into a {@link Bundle}. See
+ * {@link BundleObjectBuilder#registerWriter(Class, BundleWriter)}.
+ *
+ * @param <V>
+ *            The type of the values this writer can write.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public interface BundleWriter<V>
+{
+	/**
+	 * Put the given value into the given {@link Bundle}.
+	 *
+	 * @param bundle
+	 *            The {@link Bundle} to write to.
+	 * @param key
+	 *            The key of the value.
+	 * @param value
+	 *            The value, never <code>null</code>.
+	 */
+	public void write(Bundle bundle, String key, V value);
+}
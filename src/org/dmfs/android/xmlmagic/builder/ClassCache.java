@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package org.dmfs.android.xmlmagic.builder;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.dmfs.android.xmlmagic.CacheManager;
+
+
+/**
+ * A cache of classes by {@link ClassLoader} and class name. Class names that can't be found are cached as well, so a missing class is looked up only once
+ * per class loader. Classes that fail to link or initialize are not cached, the error is thrown to the caller.
+ * <p/>
+ * Classes are referenced weakly, because each class refers to its class loader, which would keep the class loader from being garbage collected.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+final class ClassCache
+{
+	/**
+	 * The maximum number of class names to cache per class loader.
+	 */
+	private final static int MAX_ENTRIES = 128;
+
+	/**
+	 * An entry for class names that can't be resolved.
+	 */
+	private final static Entry NOT_FOUND = new Entry(null, true);
+
+	/**
+	 * The cache entries by class loader and name. Guarded by the class lock.
+	 */
+	private final static Map<ClassLoader, Map<String, Entry>> CACHE = new WeakHashMap<ClassLoader, Map<String, Entry>>(4);
+
+	/**
+	 * The assumed size of a cache entry, including its name.
+	 */
+	private final static int ENTRY_SIZE = 128;
+
+	static
+	{
+		CacheManager.register(new CacheManager.TrimmableCache()
+		{
+			@Override
+			public long getRetainedSize()
+			{
+				synchronized (ClassCache.class)
+				{
+					long result = 0;
+					for (Map<String, Entry> entries : CACHE.values())
+					{
+						result += entries.size() * ENTRY_SIZE;
+					}
+					return result;
+				}
+			}
+
+
+			@Override
+			public void clear()
+			{
+				ClassCache.clear();
+			}
+		}, CacheManager.TIER_SMALL);
+	}
+
+
+	private ClassCache()
+	{
+	}
+
+
+	/**
+	 * Returns the class with the given name.
+	 *
+	 * @param name
+	 *            The fully qualified name of the class.
+	 * @param initialize
+	 *            Whether the class must be initialized.
+	 * @param classLoader
+	 *            The {@link ClassLoader} to load the class with.
+	 * @return The {@link Class} or <code>null</code> if no such class exists.
+	 * @throws LinkageError
+	 *             If the class exists but can't be linked or initialized, just like {@link Class#forName(String, boolean, ClassLoader)}. This is not cached.
+	 */
+	static Class<?> forName(String name, boolean initialize, ClassLoader classLoader)
+	{
+		Entry entry;
+		synchronized (ClassCache.class)
+		{
+			Map<String, Entry> entries = CACHE.get(classLoader);
+			entry = entries == null ? null : entries.get(name);
+		}
+
+		if (entry == NOT_FOUND)
+		{
+			return null;
+		}
+
+		Class<?> result = entry == null ? null : entry.clazz.get();
+		if (result != null && (entry.initialized || !initialize))
+		{
+			return result;
+		}
+
+		try
+		{
+			result = Class.forName(name, initialize, classLoader);
+			entry = new Entry(result, initialize);
+		}
+		catch (ClassNotFoundException e)
+		{
+			result = null;
+			entry = NOT_FOUND;
+		}
+
+		synchronized (ClassCache.class)
+		{
+			Map<String, Entry> entries = CACHE.get(classLoader);
+			if (entries == null)
+			{
+				entries = new HashMap<String, Entry>(16);
+				CACHE.put(classLoader, entries);
+			}
+			else if (entries.size() >= MAX_ENTRIES)
+			{
+				// it's unlikely to ever get here, just start over if we do
+				entries.clear();
+			}
+			entries.put(name, entry);
+		}
+		return result;
+	}
+
+
+	/**
+	 * Drop all cached classes.
+	 */
+	static synchronized void clear()
+	{
+		CACHE.clear();
+	}
+
+	/**
+	 * A cached class.
+	 */
+	private final static class Entry
+	{
+		public final WeakReference<Class<?>> clazz;
+
+		/**
+		 * Whether the class has been initialized.
+		 */
+		public final boolean initialized;
+
+
+		public Entry(Class<?> clazz, boolean initialized)
+		{
+			this.clazz = new WeakReference<Class<?>>(clazz);
+			this.initialized = initialized;
+		}
+	}
+}
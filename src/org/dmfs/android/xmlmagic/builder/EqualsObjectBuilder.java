@@ -18,7 +18,6 @@
 package org.dmfs.android.xmlmagic.builder;
 
 import org.dmfs.xmlobjects.ElementDescriptor;
-import org.dmfs.xmlobjects.builder.AbstractObjectBuilder;
 import org.dmfs.xmlobjects.pull.ParserContext;
 import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
 
@@ -40,15 +39,25 @@ import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
  * The result value of the equals element above will be <code>true</code> if and only if the column <code>name</code> of the provided cursor contains the string
  * <code>"abc"</code>.
  * <p/>
+ * Once a child element doesn't equal its predecessor, the remaining children are not evaluated anymore.
+ * <p/>
  * {@link org.dmfs.android.xmlmagic.Model#EQUALS} uses this builder.
  *
  * @author Marten Gajda <marten@dmfs.org>
  */
-public class EqualsObjectBuilder extends AbstractObjectBuilder<Boolean>
+public class EqualsObjectBuilder extends AbstractStatefulObjectBuilder<Boolean, EqualsObjectBuilder.EqualsState>
 {
+	@Override
+	protected EqualsState newState(ParserContext context)
+	{
+		return new EqualsState();
+	}
+
+
 	@Override
 	public Boolean get(ElementDescriptor<Boolean> descriptor, Boolean recycle, ParserContext context) throws XmlObjectPullParserException
 	{
+		initState(context);
 		// the default result is true
 		return true;
 	}
@@ -64,17 +73,56 @@ public class EqualsObjectBuilder extends AbstractObjectBuilder<Boolean>
 			return object;
 		}
 
-		Object state = context.getState();
-		if (state == null)
+		EqualsState state = getState(context);
+		if (!state.hasValue)
 		{
-			context.setState(child);
+			state.value = child;
+			state.hasValue = true;
 			return object;
 		}
 		else
 		{
-			boolean result = state.equals(child);
-			context.setState(child);
+			boolean result = state.value == null ? child == null : state.value.equals(child);
+			state.value = child;
+			if (!result)
+			{
+				// the result is false, no need to evaluate the remaining children
+				state.skipping = true;
+				skipEvaluation(context);
+			}
 			return result;
 		}
 	}
+
+
+	@Override
+	public Boolean finish(ElementDescriptor<Boolean> descriptor, Boolean object, ParserContext context) throws XmlObjectPullParserException
+	{
+		if (getState(context).skipping)
+		{
+			resumeEvaluation(context);
+		}
+		return object;
+	}
+
+	/**
+	 * The state of an equals element.
+	 */
+	static final class EqualsState
+	{
+		/**
+		 * Whether a child value has been seen yet.
+		 */
+		boolean hasValue;
+
+		/**
+		 * The value of the previous child element.
+		 */
+		Object value;
+
+		/**
+		 * Whether the result has been determined and the evaluation of the remaining children is skipped.
+		 */
+		boolean skipping;
+	}
 }
@@ -35,7 +35,7 @@ import android.widget.RemoteViews;
 /**
  * Created by marten on 10.05.15.
  */
-public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notification>
+public class NotificationObjectBuilder extends AbstractStatefulObjectBuilder<Notification, NotificationCompat.Builder>
 {
 	public final static NotificationObjectBuilder INSTANCE = new NotificationObjectBuilder();
 
@@ -67,8 +67,15 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 
 	private final static QualifiedName ATTR_SMALL_ICON = QualifiedName.get("small-icon");
 	private final static ElementDescriptor<NotificationCompat.Action> ADD_ACTION = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "add-action"),
-		new BaseAndroidObjectBuilder<NotificationCompat.Action>()
+		new AbstractStatefulObjectBuilder<NotificationCompat.Action, Action>()
 		{
+			@Override
+			protected Action newState(ParserContext context)
+			{
+				return new Action();
+			}
+
+
 			@Override
 			public NotificationCompat.Action get(ElementDescriptor<NotificationCompat.Action> descriptor, NotificationCompat.Action recycle,
 				ParserContext context) throws XmlObjectPullParserException
@@ -77,7 +84,7 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 				{
 					throw new IllegalArgumentException("ParserContext must be an AndroidParserContext to build a Notification");
 				}
-				context.setState(new Action());
+				initState(context);
 
 				return null;
 			}
@@ -89,11 +96,11 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 			{
 				if (ATTR_ICON == attribute)
 				{
-					((Action) context.getState()).icon = getIntegerAttr(attribute, false, context);
+					getState(context).icon = getIntegerAttr(attribute, false, context);
 				}
 				else if (ATTR_TITLE == attribute)
 				{
-					((Action) context.getState()).title = getCharSequenceAttr(attribute, value, context);
+					getState(context).title = getCharSequenceAttr(attribute, value, context);
 				}
 				return object;
 			}
@@ -105,7 +112,7 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 			{
 				if (childDescriptor == Model.PENDING_INTENT)
 				{
-					((Action) context.getState()).intent = (PendingIntent) child;
+					getState(context).intent = (PendingIntent) child;
 				}
 				return object;
 			}
@@ -115,7 +122,7 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 			public NotificationCompat.Action finish(ElementDescriptor<NotificationCompat.Action> descriptor, NotificationCompat.Action object,
 				ParserContext context) throws XmlObjectPullParserException
 			{
-				Action action = (Action) context.getState();
+				Action action = getState(context);
 				if (action.intent == null)
 				{
 					return null;
@@ -208,15 +215,46 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 		});
 
 
+	@Override
+	protected NotificationCompat.Builder newState(ParserContext context)
+	{
+		return new NotificationCompat.Builder(((AndroidParserContext) context).getAppContext());
+	}
+
+
 	private NotificationCompat.Builder getBuilder(ParserContext context)
 	{
-		NotificationCompat.Builder builder = (NotificationCompat.Builder) context.getState();
-		if (builder == null)
-		{
-			builder = new NotificationCompat.Builder(((AndroidParserContext) context).getAppContext());
-			context.setState(builder);
-		}
-		return builder;
+		return getState(context);
+	}
+
+
+	/**
+	 * Set a field of the notification that's currently being built. Subclasses may override this to track the fields a template sets.
+	 *
+	 * @param context
+	 *            The current {@link ParserContext}.
+	 * @param field
+	 *            The {@link Field} to set.
+	 * @param value
+	 *            The value of the field.
+	 */
+	protected void setField(ParserContext context, Field field, Object value)
+	{
+		field.apply(getBuilder(context), value);
+	}
+
+
+	/**
+	 * Add an action to the notification that's currently being built. Subclasses may override this to track the actions a template adds.
+	 *
+	 * @param context
+	 *            The current {@link ParserContext}.
+	 * @param action
+	 *            The {@link NotificationCompat.Action} to add.
+	 */
+	protected void addAction(ParserContext context, NotificationCompat.Action action)
+	{
+		getBuilder(context).addAction(action);
 	}
 
 
@@ -227,7 +265,7 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 		{
 			throw new IllegalArgumentException("ParserContext must be an AndroidParserContext to build a Notification");
 		}
-		context.setState(new NotificationCompat.Builder(((AndroidParserContext) context).getAppContext()));
+		initState(context);
 
 		return null;
 	}
@@ -239,51 +277,51 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 	{
 		if (attribute == ATTR_TICKER)
 		{
-			getBuilder(context).setTicker(getCharSequenceAttr(attribute, value, context));
+			setField(context, Field.TICKER, getCharSequenceAttr(attribute, value, context));
 		}
 		else if (attribute == ATTR_TITLE)
 		{
-			getBuilder(context).setContentTitle(getCharSequenceAttr(attribute, value, context));
+			setField(context, Field.TITLE, getCharSequenceAttr(attribute, value, context));
 		}
 		else if (attribute == ATTR_CONTENT)
 		{
-			getBuilder(context).setContentText(getCharSequenceAttr(attribute, value, context));
+			setField(context, Field.CONTENT, getCharSequenceAttr(attribute, value, context));
 		}
 		else if (attribute == ATTR_SUB_TEXT)
 		{
-			getBuilder(context).setSubText(getCharSequenceAttr(attribute, value, context));
+			setField(context, Field.SUB_TEXT, getCharSequenceAttr(attribute, value, context));
 		}
 		else if (attribute == ATTR_SMALL_ICON)
 		{
-			getBuilder(context).setSmallIcon(getIntegerAttr(attribute, false, context));
+			setField(context, Field.SMALL_ICON, getIntegerAttr(attribute, false, context));
 		}
 		else if (attribute == ATTR_ONGOING)
 		{
-			getBuilder(context).setOngoing(getBooleanAttr(attribute, context));
+			setField(context, Field.ONGOING, getBooleanAttr(attribute, context));
 		}
 		else if (attribute == ATTR_AUTO_CANCEL)
 		{
-			getBuilder(context).setAutoCancel(getBooleanAttr(attribute, context));
+			setField(context, Field.AUTO_CANCEL, getBooleanAttr(attribute, context));
 		}
 		else if (attribute == ATTR_SHOW_WHEN)
 		{
-			getBuilder(context).setShowWhen(getBooleanAttr(attribute, context));
+			setField(context, Field.SHOW_WHEN, getBooleanAttr(attribute, context));
 		}
 		else if (attribute == ATTR_SORT_KEY)
 		{
-			getBuilder(context).setSortKey(getCharSequenceAttr(attribute, value, context).toString());
+			setField(context, Field.SORT_KEY, getCharSequenceAttr(attribute, value, context).toString());
 		}
 		else if (attribute == ATTR_NUMBER)
 		{
-			getBuilder(context).setNumber(getIntegerAttr(attribute, true, context));
+			setField(context, Field.NUMBER, getIntegerAttr(attribute, true, context));
 		}
 		else if (attribute == ATTR_ALERT_ONLY_ONCE)
 		{
-			getBuilder(context).setOnlyAlertOnce(getBooleanAttr(attribute, context));
+			setField(context, Field.ALERT_ONLY_ONCE, getBooleanAttr(attribute, context));
 		}
 		else if (attribute == ATTR_SOUND)
 		{
-			getBuilder(context).setSound(Uri.parse(getCharSequenceAttr(attribute, value, context).toString()));
+			setField(context, Field.SOUND, Uri.parse(getCharSequenceAttr(attribute, value, context).toString()));
 		}
 		return object;
 	}
@@ -300,31 +338,29 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 
 		if (childDescriptor == ADD_ACTION)
 		{
-			getBuilder(context).addAction((NotificationCompat.Action) child);
+			addAction(context, (NotificationCompat.Action) child);
 		}
 		else if (childDescriptor == CONTENT_ACTION)
 		{
-			getBuilder(context).setContentIntent((PendingIntent) child);
+			setField(context, Field.CONTENT_INTENT, child);
 		}
 		else if (childDescriptor == DELETE_ACTION)
 		{
-			getBuilder(context).setDeleteIntent((PendingIntent) child);
+			setField(context, Field.DELETE_INTENT, child);
 		}
 		else if (childDescriptor == Model.REMOTE_VIEWS)
 		{
-			getBuilder(context).setContent((RemoteViews) child);
+			setField(context, Field.CONTENT_VIEW, child);
 		}
 		else if (childDescriptor == LIGHTS)
 		{
-			Lights lights = (Lights) child;
-			getBuilder(context).setLights(lights.color, lights.on, lights.off);
+			setField(context, Field.LIGHTS, child);
 		}
 		else if (childDescriptor == PROGRESS)
 		{
-			Progress progress = (Progress) child;
-			if (progress.visible)
+			if (((Progress) child).visible)
 			{
-				getBuilder(context).setProgress(progress.max, progress.progress, progress.indeterminante);
+				setField(context, Field.PROGRESS, child);
 			}
 		}
 		return object;
@@ -338,6 +374,179 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 		return getBuilder(context).build();
 	}
 
+	/**
+	 * The fields of a notification a template can set. Values passed to {@link #apply(NotificationCompat.Builder, Object)} have the type the builder
+	 * produces for the respective element or attribute and implement {@link Object#equals(Object)}, with the exception of {@link CharSequence}s, which may
+	 * carry styles, and {@link RemoteViews}.
+	 */
+	public enum Field
+	{
+		TICKER
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setTicker((CharSequence) value);
+			}
+		},
+		TITLE
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setContentTitle((CharSequence) value);
+			}
+		},
+		CONTENT
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setContentText((CharSequence) value);
+			}
+		},
+		SUB_TEXT
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setSubText((CharSequence) value);
+			}
+		},
+		SMALL_ICON
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setSmallIcon(value == null ? 0 : (Integer) value);
+			}
+		},
+		ONGOING
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setOngoing(value != null && (Boolean) value);
+			}
+		},
+		AUTO_CANCEL
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setAutoCancel(value != null && (Boolean) value);
+			}
+		},
+		SHOW_WHEN
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setShowWhen(value == null || (Boolean) value);
+			}
+		},
+		SORT_KEY
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setSortKey((String) value);
+			}
+		},
+		NUMBER
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setNumber(value == null ? 0 : (Integer) value);
+			}
+		},
+		ALERT_ONLY_ONCE
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setOnlyAlertOnce(value != null && (Boolean) value);
+			}
+		},
+		SOUND
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setSound((Uri) value);
+			}
+		},
+		CONTENT_INTENT
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setContentIntent((PendingIntent) value);
+			}
+		},
+		DELETE_INTENT
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setDeleteIntent((PendingIntent) value);
+			}
+		},
+		CONTENT_VIEW
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				builder.setContent((RemoteViews) value);
+			}
+		},
+		LIGHTS
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				if (value == null)
+				{
+					// this clears the lights flag
+					builder.setLights(0, 0, 0);
+				}
+				else
+				{
+					Lights lights = (Lights) value;
+					builder.setLights(lights.color, lights.on, lights.off);
+				}
+			}
+		},
+		PROGRESS
+		{
+			@Override
+			public void apply(NotificationCompat.Builder builder, Object value)
+			{
+				if (value == null)
+				{
+					// this removes the progress bar
+					builder.setProgress(0, 0, false);
+				}
+				else
+				{
+					Progress progress = (Progress) value;
+					builder.setProgress(progress.max, progress.progress, progress.indeterminante);
+				}
+			}
+		};
+
+		/**
+		 * Set this field of the given {@link NotificationCompat.Builder} to the given value.
+		 *
+		 * @param builder
+		 *            The {@link NotificationCompat.Builder}.
+		 * @param value
+		 *            The new value or <code>null</code> to reset the field to its default.
+		 */
+		public abstract void apply(NotificationCompat.Builder builder, Object value);
+	}
+
 	private static class Action
 	{
 		int icon;
@@ -350,6 +559,25 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 		int color = Color.GREEN;
 		int on = 500;
 		int off = 500;
+
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Lights))
+			{
+				return false;
+			}
+			Lights other = (Lights) o;
+			return color == other.color && on == other.on && off == other.off;
+		}
+
+
+		@Override
+		public int hashCode()
+		{
+			return (color * 31 + on) * 31 + off;
+		}
 	}
 
 	private static class Progress
@@ -358,5 +586,24 @@ public class NotificationObjectBuilder extends BaseAndroidObjectBuilder<Notifica
 		int progress = 0;
 		boolean visible = true;
 		boolean indeterminante = false;
+
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Progress))
+			{
+				return false;
+			}
+			Progress other = (Progress) o;
+			return max == other.max && progress == other.progress && visible == other.visible && indeterminante == other.indeterminante;
+		}
+
+
+		@Override
+		public int hashCode()
+		{
+			return (max * 31 + progress) * 4 + (visible ? 2 : 0) + (indeterminante ? 1 : 0);
+		}
 	}
 }
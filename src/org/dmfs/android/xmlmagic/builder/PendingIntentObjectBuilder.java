@@ -17,7 +17,12 @@
 
 package org.dmfs.android.xmlmagic.builder;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.dmfs.android.xmlmagic.AndroidParserContext;
+import org.dmfs.android.xmlmagic.CacheManager;
 import org.dmfs.android.xmlmagic.Model;
 import org.dmfs.xmlobjects.ElementDescriptor;
 import org.dmfs.xmlobjects.QualifiedName;
@@ -27,23 +32,90 @@ import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Bundle;
 
 
 /**
  * Created by marten on 10.05.15.
+ * <p/>
+ * Each call to {@link PendingIntent#getActivity(Context, int, Intent, int)} and its siblings is an IPC to the system. The system returns the same
+ * {@link PendingIntent} for equal request codes, flags and intents that are equal according to {@link Intent#filterEquals(Intent)}, so this builder keeps the
+ * most recently used PendingIntents and returns them without asking the system again. The cache is bypassed for {@link PendingIntent#FLAG_NO_CREATE},
+ * {@link PendingIntent#FLAG_ONE_SHOT}, {@link PendingIntent#FLAG_CANCEL_CURRENT} and for {@link PendingIntent#FLAG_UPDATE_CURRENT} with Intents that carry
+ * extras, since these need the system to do something. Call {@link #clearCache()} after cancelling PendingIntents elsewhere.
  */
-public class PendingIntentObjectBuilder extends BaseAndroidObjectBuilder<PendingIntent>
+public class PendingIntentObjectBuilder extends AbstractStatefulObjectBuilder<PendingIntent, PendingIntentObjectBuilder.PendingIntentDescriptor>
 {
 	public final static PendingIntentObjectBuilder INSTANCE = new PendingIntentObjectBuilder();
 
 	private final static QualifiedName ATTR_INTENT_TYPE = QualifiedName.get("intent-type");
 	private final static QualifiedName ATTR_REQUEST_CODE = QualifiedName.get("request-code");
 
+	/**
+	 * The maximum number of {@link PendingIntent}s to cache.
+	 */
+	private final static int CACHE_SIZE = 32;
+
+	/**
+	 * The most recently used {@link PendingIntent}s. Access must be synchronized on the cache itself.
+	 */
+	private final static Map<CacheKey, PendingIntent> CACHE = new LinkedHashMap<CacheKey, PendingIntent>(CACHE_SIZE * 4 / 3 + 1, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CacheKey, PendingIntent> eldest)
+		{
+			return size() > CACHE_SIZE;
+		}
+	};
+
+
+	/**
+	 * The assumed size of a cache entry, including the key.
+	 */
+	private final static int ENTRY_SIZE = 512;
+
+	static
+	{
+		CacheManager.register(new CacheManager.TrimmableCache()
+		{
+			@Override
+			public long getRetainedSize()
+			{
+				synchronized (CACHE)
+				{
+					return CACHE.size() * ENTRY_SIZE;
+				}
+			}
+
+
+			@Override
+			public void clear()
+			{
+				clearCache();
+			}
+		}, CacheManager.TIER_MEDIUM);
+	}
+
 
-	private PendingIntentDescriptor getDescriptor(ParserContext context)
+	/**
+	 * Remove all {@link PendingIntent}s from the cache. Call this after cancelling any {@link PendingIntent}s that might have been created by this builder.
+	 */
+	public static void clearCache()
 	{
-		PendingIntentDescriptor descriptor = (PendingIntentDescriptor) context.getState();
-		return descriptor;
+		synchronized (CACHE)
+		{
+			CACHE.clear();
+		}
+	}
+
+
+	@Override
+	protected PendingIntentDescriptor newState(ParserContext context)
+	{
+		return new PendingIntentDescriptor();
 	}
 
 
@@ -54,7 +126,7 @@ public class PendingIntentObjectBuilder extends BaseAndroidObjectBuilder<Pending
 		{
 			throw new IllegalArgumentException("ParserContext must be an AndroidParserContext to build a PendingIntent");
 		}
-		context.setState(new PendingIntentDescriptor());
+		initState(context);
 
 		return null;
 	}
@@ -66,11 +138,11 @@ public class PendingIntentObjectBuilder extends BaseAndroidObjectBuilder<Pending
 	{
 		if (ATTR_REQUEST_CODE == attribute)
 		{
-			getDescriptor(context).requestCode = getIntegerAttr(attribute, true, context);
+			getState(context).requestCode = getIntegerAttr(attribute, true, context);
 		}
 		else if (ATTR_INTENT_TYPE == attribute)
 		{
-			getDescriptor(context).intentType = IntentType.valueOf(value);
+			getState(context).intentType = IntentType.valueOf(value);
 		}
 		else if (Model.NAMESPACE.equals(attribute.namespace))
 		{
@@ -79,11 +151,11 @@ public class PendingIntentObjectBuilder extends BaseAndroidObjectBuilder<Pending
 			{
 				if (getBooleanAttr(attribute, context))
 				{
-					getDescriptor(context).flags |= flag.get();
+					getState(context).flags |= flag.get();
 				}
 				else
 				{
-					getDescriptor(context).flags &= ~flag.get();
+					getState(context).flags &= ~flag.get();
 				}
 			}
 		}
@@ -97,7 +169,7 @@ public class PendingIntentObjectBuilder extends BaseAndroidObjectBuilder<Pending
 	{
 		if (childDescriptor == Model.INTENT)
 		{
-			getDescriptor(context).intent = (Intent) child;
+			getState(context).intent = (Intent) child;
 		}
 		return object;
 	}
@@ -106,7 +178,75 @@ public class PendingIntentObjectBuilder extends BaseAndroidObjectBuilder<Pending
 	@Override
 	public PendingIntent finish(ElementDescriptor<PendingIntent> descriptor, PendingIntent object, ParserContext context) throws XmlObjectPullParserException
 	{
-		return getDescriptor(context).intentType.getPendingIntent(((AndroidParserContext) context).getAppContext(), getDescriptor(context));
+		// PendingIntents depend on the state of the system, they must not be cached
+		markDynamic(context);
+		PendingIntentDescriptor pendingIntentDescriptor = getState(context);
+		Context appContext = ((AndroidParserContext) context).getAppContext();
+
+		if (pendingIntentDescriptor.intent == null || (pendingIntentDescriptor.flags & PendingIntent.FLAG_NO_CREATE) != 0)
+		{
+			// nothing we could cache
+			return pendingIntentDescriptor.intentType.getPendingIntent(appContext, pendingIntentDescriptor);
+		}
+
+		int flags = pendingIntentDescriptor.flags;
+		if ((flags & (PendingIntent.FLAG_CANCEL_CURRENT | PendingIntent.FLAG_ONE_SHOT)) != 0)
+		{
+			// any cached PendingIntent with this key is going to be cancelled or used up, the new one is not cached either
+			invalidate(pendingIntentDescriptor);
+			return pendingIntentDescriptor.intentType.getPendingIntent(appContext, pendingIntentDescriptor);
+		}
+
+		CacheKey key = new CacheKey(pendingIntentDescriptor);
+		if ((flags & PendingIntent.FLAG_UPDATE_CURRENT) == 0 || !hasExtras(pendingIntentDescriptor.intent))
+		{
+			PendingIntent result;
+			synchronized (CACHE)
+			{
+				result = CACHE.get(key);
+			}
+			if (result != null)
+			{
+				return result;
+			}
+		}
+		// else the system has to update the extras
+
+		PendingIntent result = pendingIntentDescriptor.intentType.getPendingIntent(appContext, pendingIntentDescriptor);
+		if (result != null)
+		{
+			synchronized (CACHE)
+			{
+				CACHE.put(key, result);
+			}
+		}
+		return result;
+	}
+
+
+	private static boolean hasExtras(Intent intent)
+	{
+		Bundle extras = intent.getExtras();
+		return extras != null && !extras.isEmpty();
+	}
+
+
+	/**
+	 * Remove all cached {@link PendingIntent}s matching the given descriptor, regardless of their flags.
+	 */
+	private static void invalidate(PendingIntentDescriptor descriptor)
+	{
+		synchronized (CACHE)
+		{
+			Iterator<CacheKey> keys = CACHE.keySet().iterator();
+			while (keys.hasNext())
+			{
+				if (keys.next().matches(descriptor))
+				{
+					keys.remove();
+				}
+			}
+		}
 	}
 
 	private enum IntentType
@@ -183,11 +323,63 @@ public class PendingIntentObjectBuilder extends BaseAndroidObjectBuilder<Pending
 		}
 	}
 
-	private static class PendingIntentDescriptor
+	static final class PendingIntentDescriptor
 	{
 		int requestCode = 1;
 		int flags = 0;
 		Intent intent;
 		IntentType intentType = IntentType.activity;
 	}
+
+	/**
+	 * The key of a cached {@link PendingIntent}. Two keys are equal if the system would return the same {@link PendingIntent} for them.
+	 */
+	private static final class CacheKey
+	{
+		private final IntentType mIntentType;
+		private final int mRequestCode;
+		private final int mFlags;
+		private final Intent mIntent;
+		private final int mHashCode;
+
+
+		public CacheKey(PendingIntentDescriptor descriptor)
+		{
+			mIntentType = descriptor.intentType;
+			mRequestCode = descriptor.requestCode;
+			mFlags = descriptor.flags;
+			// don't keep the extras, they're not part of the key
+			mIntent = descriptor.intent.cloneFilter();
+			mHashCode = ((mIntentType.hashCode() * 31 + mRequestCode) * 31 + mFlags) * 31 + mIntent.filterHashCode();
+		}
+
+
+		/**
+		 * Returns whether this key refers to the same PendingIntent as the given descriptor, ignoring the flags.
+		 */
+		public boolean matches(PendingIntentDescriptor descriptor)
+		{
+			return mIntentType == descriptor.intentType && mRequestCode == descriptor.requestCode && mIntent.filterEquals(descriptor.intent);
+		}
+
+
+		@Override
+		public int hashCode()
+		{
+			return mHashCode;
+		}
+
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof CacheKey))
+			{
+				return false;
+			}
+			CacheKey other = (CacheKey) o;
+			return mHashCode == other.mHashCode && mIntentType == other.mIntentType && mRequestCode == other.mRequestCode && mFlags == other.mFlags
+				&& mIntent.filterEquals(other.mIntent);
+		}
+	}
 }
\ No newline at end of file
@@ -21,7 +21,9 @@ import java.lang.reflect.Field;
 import java.net.URI;
 
 import org.dmfs.android.xmlmagic.AndroidParserContext;
+import org.dmfs.android.xmlmagic.ResourceValueCache;
 import org.dmfs.android.xmlmagic.StringFormatter;
+import org.dmfs.android.xmlmagic.annotations.ResolveClass;
 import org.dmfs.android.xmlmagic.annotations.ResolveInt;
 import org.dmfs.android.xmlmagic.annotations.ResolveTokens;
 import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
@@ -31,7 +33,6 @@ import org.dmfs.xmlobjects.pull.ParserContext;
 import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
 
 import android.content.res.Resources;
-import android.content.res.Resources.NotFoundException;
 import android.net.Uri;
 import android.util.AttributeSet;
 import android.util.Xml;
@@ -71,6 +72,9 @@ import android.util.Xml;
  * </pre>
  * 
  * The result would be the value of the resource string <code>some_text</code> appended to <code>"This is "</code>.
+ * <p/>
+ * {@link Class} fields take the fully qualified name of a class. Resolved classes and unknown class names are cached per class loader. Annotate the field
+ * with {@link ResolveClass} to load the class with the application class loader or to defer its initialization.
  *
  * @author Marten Gajda <marten@dmfs.org>
  */
@@ -88,10 +92,12 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 		throws XmlObjectPullParserException
 	{
 		Resources resources = null;
+		ResourceValueCache resourceValues = null;
 		ITokenResolver resolver = null;
 		if (context instanceof AndroidParserContext)
 		{
 			resources = ((AndroidParserContext) context).getResources();
+			resourceValues = ((AndroidParserContext) context).getResourceValues();
 			resolver = ((AndroidParserContext) context).getResolver();
 		}
 
@@ -113,13 +119,14 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 				}
 				else if (resources != null)
 				{
-					resultValue = resources.getString(res);
+					resultValue = resourceValues.getString(resources, res);
 				}
 
-				if (resolver != null)
+				ResolveTokens resolve = field.getAnnotation(ResolveTokens.class);
+				if (resolve != null && resolve.value())
 				{
-					ResolveTokens resolve = field.getAnnotation(ResolveTokens.class);
-					if (resolve != null && resolve.value())
+					markDynamic(context);
+					if (resolver != null)
 					{
 						resultValue = StringFormatter.format((String) resultValue, resolver, 5);
 					}
@@ -133,13 +140,14 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 				}
 				else if (resources != null)
 				{
-					resultValue = resources.getText(res);
+					resultValue = resourceValues.getText(resources, res);
 				}
 
-				if (resolver != null)
+				ResolveTokens resolve = field.getAnnotation(ResolveTokens.class);
+				if (resolve != null && resolve.value())
 				{
-					ResolveTokens resolve = field.getAnnotation(ResolveTokens.class);
-					if (resolve != null && resolve.value())
+					markDynamic(context);
+					if (resolver != null)
 					{
 						resultValue = StringFormatter.format((CharSequence) resultValue, resolver, 5);
 					}
@@ -154,14 +162,7 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 				}
 				else if (resources != null && ((resolveInt = field.getAnnotation(ResolveInt.class)) != null && resolveInt.value()))
 				{
-					try
-					{
-						resultValue = resources.getInteger(res);
-					}
-					catch (NotFoundException e)
-					{
-						resultValue = res;
-					}
+					resultValue = resourceValues.getInteger(resources, res, res);
 				}
 				else
 				{
@@ -181,7 +182,7 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 				}
 				else if (resources != null)
 				{
-					resultValue = resources.getBoolean(res);
+					resultValue = resourceValues.getBoolean(resources, res, false);
 				}
 			}
 			else if (field.getType() == URI.class)
@@ -193,7 +194,7 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 				}
 				else if (resources != null)
 				{
-					uri = resources.getString(res);
+					uri = resourceValues.getString(resources, res);
 				}
 
 				if (uri != null)
@@ -210,7 +211,7 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 				}
 				else if (resources != null)
 				{
-					uri = resources.getString(res);
+					uri = resourceValues.getString(resources, res);
 				}
 
 				if (uri != null)
@@ -227,19 +228,19 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 				}
 				else if (resources != null)
 				{
-					className = resources.getString(res);
+					className = resourceValues.getString(resources, res);
 				}
 
 				if (className != null)
 				{
-					try
-					{
-						resultValue = Class.forName(className);
-					}
-					catch (ClassNotFoundException e)
+					ResolveClass resolveClass = field.getAnnotation(ResolveClass.class);
+					ClassLoader classLoader = null;
+					if (resolveClass != null && resolveClass.appClassLoader() && context instanceof AndroidParserContext)
 					{
-						resultValue = null;
+						classLoader = ((AndroidParserContext) context).getAppContext().getClassLoader();
 					}
+					resultValue = ClassCache.forName(className, resolveClass == null || resolveClass.initialize(),
+						classLoader != null ? classLoader : ReflectionObjectBuilder.class.getClassLoader());
 				}
 			}
 
@@ -264,4 +265,16 @@ public class ReflectionObjectBuilder<T> extends org.dmfs.xmlobjects.builder.refl
 		}
 		return object;
 	}
+
+
+	/**
+	 * Mark the result of the current load as dynamic, see {@link AndroidParserContext#markDynamic()}.
+	 */
+	private void markDynamic(ParserContext context)
+	{
+		if (context instanceof AndroidParserContext)
+		{
+			((AndroidParserContext) context).markDynamic();
+		}
+	}
 }
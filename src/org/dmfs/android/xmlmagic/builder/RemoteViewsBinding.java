@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.builder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.widget.RemoteViews;
+
+
+/**
+ * A single action on a view of a {@link RemoteViews}, like setting the text of a TextView. Bindings are created by the {@link RemoteViewsObjectBuilder} and
+ * applied when the {@link RemoteViews} is built.
+ * <p/>
+ * Each binding targets a method of a view, so two bindings with the same view id and method name replace each other. Bindings with the same target and equal
+ * values have the same effect.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class RemoteViewsBinding
+{
+	private final int mViewId;
+	private final Setter mSetter;
+	private final String mMethod;
+	private final Object mValue;
+
+
+	RemoteViewsBinding(int viewId, Setter setter, String method, Object value)
+	{
+		mViewId = viewId;
+		mSetter = setter;
+		mMethod = method == null ? setter.method : method;
+		mValue = value;
+	}
+
+
+	/**
+	 * Returns the id of the target view.
+	 *
+	 * @return The view id.
+	 */
+	public int getViewId()
+	{
+		return mViewId;
+	}
+
+
+	/**
+	 * Returns the name of the target method.
+	 *
+	 * @return The method name.
+	 */
+	public String getMethod()
+	{
+		return mMethod;
+	}
+
+
+	/**
+	 * Returns the value this binding sets.
+	 *
+	 * @return The value.
+	 */
+	public Object getValue()
+	{
+		return mValue;
+	}
+
+
+	/**
+	 * Returns whether the given binding targets the same method of the same view as this binding.
+	 *
+	 * @param other
+	 *            Another {@link RemoteViewsBinding}.
+	 * @return <code>true</code> if both bindings have the same target.
+	 */
+	public boolean hasSameTarget(RemoteViewsBinding other)
+	{
+		return mViewId == other.mViewId && mMethod.equals(other.mMethod);
+	}
+
+
+	/**
+	 * Add this binding to the given {@link RemoteViews}.
+	 *
+	 * @param views
+	 *            The {@link RemoteViews}.
+	 */
+	public void apply(RemoteViews views)
+	{
+		mSetter.apply(views, mViewId, mMethod, mValue);
+	}
+
+
+	/**
+	 * Returns whether this binding is known to have the same effect as the given binding. Styled text is never considered equal, because spans can't be compared
+	 * reliably.
+	 */
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == this)
+		{
+			return true;
+		}
+		if (!(o instanceof RemoteViewsBinding))
+		{
+			return false;
+		}
+		RemoteViewsBinding other = (RemoteViewsBinding) o;
+		if (!hasSameTarget(other) || mSetter != other.mSetter)
+		{
+			return false;
+		}
+		if (mValue instanceof CharSequence && other.mValue instanceof CharSequence)
+		{
+			return !hasSpans(mValue) && !hasSpans(other.mValue) && TextUtils.equals((CharSequence) mValue, (CharSequence) other.mValue);
+		}
+		// Bitmaps and Bundles are only equal to themselves
+		return mValue == other.mValue || mValue != null && !(mValue instanceof Bitmap) && !(mValue instanceof Bundle) && mValue.equals(other.mValue);
+	}
+
+
+	@Override
+	public int hashCode()
+	{
+		return mViewId * 31 + mMethod.hashCode();
+	}
+
+
+	private static boolean hasSpans(Object text)
+	{
+		return text instanceof Spanned && ((Spanned) text).getSpans(0, ((Spanned) text).length(), Object.class).length > 0;
+	}
+
+	/**
+	 * The setters of {@link RemoteViews}. The typed setters have a fixed method name, the reflection setters call the method given by the template.
+	 */
+	enum Setter
+	{
+		TEXT("setText")
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setTextViewText(viewId, (CharSequence) value);
+			}
+		},
+		IMAGE_RESOURCE("setImageResource")
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setImageViewResource(viewId, ((Number) value).intValue());
+			}
+		},
+		IMAGE_URI("setImageURI")
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setImageViewUri(viewId, (Uri) value);
+			}
+		},
+		IMAGE_BITMAP("setImageBitmap")
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setImageViewBitmap(viewId, (Bitmap) value);
+			}
+		},
+		VISIBILITY("setVisibility")
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setViewVisibility(viewId, ((Number) value).intValue());
+			}
+		},
+		ON_CLICK_PENDING_INTENT("setOnClickPendingIntent")
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setOnClickPendingIntent(viewId, (PendingIntent) value);
+			}
+		},
+		ON_CLICK_FILL_IN_INTENT("setOnClickFillInIntent")
+		{
+			@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setOnClickFillInIntent(viewId, (Intent) value);
+			}
+		},
+		INT(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setInt(viewId, method, ((Number) value).intValue());
+			}
+		},
+		LONG(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setLong(viewId, method, ((Number) value).longValue());
+			}
+		},
+		FLOAT(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setFloat(viewId, method, ((Number) value).floatValue());
+			}
+		},
+		DOUBLE(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setDouble(viewId, method, ((Number) value).doubleValue());
+			}
+		},
+		BOOLEAN(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setBoolean(viewId, method, (Boolean) value);
+			}
+		},
+		CHAR_SEQUENCE(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setCharSequence(viewId, method, (CharSequence) value);
+			}
+		},
+		URI(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setUri(viewId, method, (Uri) value);
+			}
+		},
+		BITMAP(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setBitmap(viewId, method, (Bitmap) value);
+			}
+		},
+		BUNDLE(null)
+		{
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setBundle(viewId, method, (Bundle) value);
+			}
+		},
+		INTENT(null)
+		{
+			@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+			@Override
+			void apply(RemoteViews views, int viewId, String method, Object value)
+			{
+				views.setIntent(viewId, method, (Intent) value);
+			}
+		};
+
+		/**
+		 * The reflection setters by the type of the value they take.
+		 */
+		private final static Map<Class<?>, Setter> REFLECTION_SETTERS = new HashMap<Class<?>, Setter>(16);
+
+		static
+		{
+			REFLECTION_SETTERS.put(Integer.class, INT);
+			REFLECTION_SETTERS.put(Short.class, INT);
+			REFLECTION_SETTERS.put(Byte.class, INT);
+			REFLECTION_SETTERS.put(Long.class, LONG);
+			REFLECTION_SETTERS.put(Float.class, FLOAT);
+			REFLECTION_SETTERS.put(Double.class, DOUBLE);
+			REFLECTION_SETTERS.put(Boolean.class, BOOLEAN);
+			REFLECTION_SETTERS.put(Uri.class, URI);
+			REFLECTION_SETTERS.put(Bitmap.class, BITMAP);
+			REFLECTION_SETTERS.put(Bundle.class, BUNDLE);
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+			{
+				REFLECTION_SETTERS.put(Intent.class, INTENT);
+			}
+		}
+
+		/**
+		 * The name of the method this setter calls or <code>null</code> if it calls the method given by the template.
+		 */
+		final String method;
+
+
+		private Setter(String method)
+		{
+			this.method = method;
+		}
+
+
+		abstract void apply(RemoteViews views, int viewId, String method, Object value);
+
+
+		/**
+		 * Returns the reflection setter that takes values of the type of the given value.
+		 *
+		 * @param value
+		 *            The value.
+		 * @return The {@link Setter} or <code>null</code> if there is no setter for the type of the value.
+		 */
+		static Setter forValue(Object value)
+		{
+			if (value instanceof CharSequence)
+			{
+				// this includes Strings, view methods usually take CharSequences
+				return CHAR_SEQUENCE;
+			}
+			if (value instanceof Uri)
+			{
+				// Uris come in a few flavors
+				return URI;
+			}
+			return value == null ? null : REFLECTION_SETTERS.get(value.getClass());
+		}
+	}
+}
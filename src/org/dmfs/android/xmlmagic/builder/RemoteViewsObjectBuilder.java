@@ -17,6 +17,9 @@
 
 package org.dmfs.android.xmlmagic.builder;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.dmfs.android.xmlmagic.AndroidParserContext;
 import org.dmfs.android.xmlmagic.Model;
 import org.dmfs.xmlobjects.ElementDescriptor;
@@ -25,21 +28,48 @@ import org.dmfs.xmlobjects.builder.IObjectBuilder;
 import org.dmfs.xmlobjects.pull.ParserContext;
 import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
 
-import android.annotation.TargetApi;
-import android.app.PendingIntent;
-import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Build.VERSION;
+import android.view.View;
 import android.widget.RemoteViews;
 
 
-public class RemoteViewsObjectBuilder extends BaseAndroidObjectBuilder<RemoteViews>
+/**
+ * Builds {@link RemoteViews} from XML. The layout is given by the <code>layout</code> attribute, the child elements bind values to the views of the layout:
+ *
+ * <pre>
+ * {@code
+ * <xmlmagic:remote-views layout="@layout/widget">
+ *     <xmlmagic:remote-set-text id="@id/title" value="{@literal@bundle:title}" />
+ *     <xmlmagic:remote-set-image id="@id/icon" value="@drawable/icon" />
+ *     <xmlmagic:remote-set-visibility id="@id/progress" value="gone" />
+ *     <xmlmagic:remote-call id="@id/progress" method="setMax"><int>100</int></xmlmagic:remote-call>
+ *     <xmlmagic:remote-onclick id="@id/title"><xmlmagic:pending-intent>...</xmlmagic:pending-intent></xmlmagic:remote-onclick>
+ * </xmlmagic:remote-views>}
+ * </pre>
+ *
+ * <code>remote-set-text</code> takes a text, <code>remote-set-image</code> takes a resource id, a {@link Uri} or a {@link Bitmap},
+ * <code>remote-set-visibility</code> takes <code>visible</code>, <code>invisible</code>, <code>gone</code> or one of the {@link View} constants and
+ * <code>remote-onclick</code> takes a {@link android.app.PendingIntent} or a fill-in {@link android.content.Intent}. Values can be given in the
+ * <code>value</code> attribute or as a child element.
+ * <p/>
+ * <code>remote-call</code> calls the method given by the <code>method</code> attribute with the value of the child element. The type of the value selects
+ * the {@link RemoteViews} setter, e.g. an Integer results in {@link RemoteViews#setInt(int, String, int)}. Texts are always passed as {@link CharSequence}.
+ * The <code>method</code> attribute can be used with all other binding elements as well. If there is no setter for the type of the value, the element falls
+ * back to its own setter and the method is ignored.
+ * <p/>
+ * The bindings are collected while the element is parsed and applied in {@link #build(ParserContext, int, List)}, which subclasses can override.
+ */
+public class RemoteViewsObjectBuilder extends AbstractStatefulObjectBuilder<RemoteViews, RemoteViewsObjectBuilder.Template>
 {
 	public final static RemoteViewsObjectBuilder INSTANCE = new RemoteViewsObjectBuilder();
 
 	private final static QualifiedName ATTR_LAYOUT = QualifiedName.get("layout");
 	private final static QualifiedName ATTR_ID = QualifiedName.get("id");
 	private final static QualifiedName ATTR_METHOD = QualifiedName.get("method");
+	private final static QualifiedName ATTR_VALUE = QualifiedName.get("value");
 
 	private final static IObjectBuilder<RemoteBinding> BUILDER = new BaseAndroidObjectBuilder<RemoteBinding>()
 	{
@@ -62,6 +92,21 @@ public class RemoteViewsObjectBuilder extends BaseAndroidObjectBuilder<RemoteVie
 			{
 				object.methodName = value;
 			}
+			else if (attribute == ATTR_VALUE)
+			{
+				if (descriptor == REMOTE_SET_IMAGE)
+				{
+					object.value = getIntegerAttr(attribute, false, context);
+				}
+				else if (descriptor == REMOTE_SET_VISIBILITY)
+				{
+					object.value = visibility(getCharSequenceAttr(attribute, value, context).toString());
+				}
+				else
+				{
+					object.value = getCharSequenceAttr(attribute, value, context);
+				}
+			}
 			return object;
 		}
 
@@ -71,7 +116,7 @@ public class RemoteViewsObjectBuilder extends BaseAndroidObjectBuilder<RemoteVie
 			ParserContext context) throws XmlObjectPullParserException
 		{
 			object.descriptor = childDescriptor;
-			object.value = child;
+			object.value = descriptor == REMOTE_SET_VISIBILITY && child instanceof CharSequence ? visibility(child.toString()) : child;
 			return object;
 		}
 	};
@@ -79,6 +124,59 @@ public class RemoteViewsObjectBuilder extends BaseAndroidObjectBuilder<RemoteVie
 		BUILDER);
 	private final static ElementDescriptor<RemoteBinding> REMOTE_SET_TEXT = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "remote-set-text"),
 		BUILDER);
+	private final static ElementDescriptor<RemoteBinding> REMOTE_SET_IMAGE = ElementDescriptor.register(
+		QualifiedName.get(Model.NAMESPACE, "remote-set-image"), BUILDER);
+	private final static ElementDescriptor<RemoteBinding> REMOTE_SET_VISIBILITY = ElementDescriptor.register(
+		QualifiedName.get(Model.NAMESPACE, "remote-set-visibility"), BUILDER);
+	private final static ElementDescriptor<RemoteBinding> REMOTE_CALL = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, "remote-call"),
+		BUILDER);
+
+
+	/**
+	 * Converts a visibility name into one of the {@link View} visibility constants.
+	 */
+	private static Integer visibility(String value)
+	{
+		if ("gone".equalsIgnoreCase(value))
+		{
+			return View.GONE;
+		}
+		if ("invisible".equalsIgnoreCase(value))
+		{
+			return View.INVISIBLE;
+		}
+		if ("visible".equalsIgnoreCase(value))
+		{
+			return View.VISIBLE;
+		}
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+
+	@Override
+	protected Template newState(ParserContext context)
+	{
+		return new Template();
+	}
+
+
+	@Override
+	public RemoteViews get(ElementDescriptor<RemoteViews> descriptor, RemoteViews recycle, ParserContext context) throws XmlObjectPullParserException
+	{
+		if (!(context instanceof AndroidParserContext))
+		{
+			throw new IllegalArgumentException("ParserContext must be an AndroidParserContext to build RemoteViews");
+		}
+		initState(context);
+		return null;
+	}
 
 
 	@Override
@@ -87,16 +185,12 @@ public class RemoteViewsObjectBuilder extends BaseAndroidObjectBuilder<RemoteVie
 	{
 		if (attribute == ATTR_LAYOUT)
 		{
-			return new RemoteViews(((AndroidParserContext) context).getAppContext().getPackageName(), getIntegerAttr(attribute, false, context));
-		}
-		else
-		{
-			return object;
+			getState(context).layoutId = getIntegerAttr(attribute, false, context);
 		}
+		return object;
 	}
 
 
-	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
 	@Override
 	public <V> RemoteViews update(ElementDescriptor<RemoteViews> descriptor, RemoteViews object, ElementDescriptor<V> childDescriptor, V child,
 		ParserContext context) throws XmlObjectPullParserException
@@ -107,27 +201,137 @@ public class RemoteViewsObjectBuilder extends BaseAndroidObjectBuilder<RemoteVie
 			return object;
 		}
 
-		RemoteBinding binding = (RemoteBinding) child;
+		RemoteViewsBinding binding = toBinding(childDescriptor, (RemoteBinding) child);
+		if (binding != null)
+		{
+			getState(context).bindings.add(binding);
+		}
+		return object;
+	}
+
+
+	@Override
+	public RemoteViews finish(ElementDescriptor<RemoteViews> descriptor, RemoteViews object, ParserContext context) throws XmlObjectPullParserException
+	{
+		Template template = getState(context);
+		setState(context, null);
+		if (template.layoutId == 0)
+		{
+			// no layout, no RemoteViews
+			return null;
+		}
+		return build(context, template.layoutId, template.bindings);
+	}
+
 
-		if (childDescriptor == REMOTE_ONCLICK)
+	/**
+	 * Build the {@link RemoteViews} of the given layout and apply the given bindings. Subclasses may override this to build the RemoteViews differently.
+	 *
+	 * @param context
+	 *            The current {@link ParserContext}, this is always an {@link AndroidParserContext}.
+	 * @param layoutId
+	 *            The id of the layout resource.
+	 * @param bindings
+	 *            The bindings in the order they appear in the template.
+	 * @return The {@link RemoteViews}.
+	 */
+	protected RemoteViews build(ParserContext context, int layoutId, List<RemoteViewsBinding> bindings)
+	{
+		RemoteViews views = new RemoteViews(((AndroidParserContext) context).getAppContext().getPackageName(), layoutId);
+		for (int i = 0, count = bindings.size(); i < count; ++i)
+		{
+			bindings.get(i).apply(views);
+		}
+		return views;
+	}
+
+
+	/**
+	 * Select the {@link RemoteViewsBinding.Setter} for the given binding element.
+	 *
+	 * @return A {@link RemoteViewsBinding} or <code>null</code> if the value can't be bound.
+	 */
+	private static RemoteViewsBinding toBinding(ElementDescriptor<?> descriptor, RemoteBinding binding)
+	{
+		Object value = binding.value;
+		if (value == null)
+		{
+			return null;
+		}
+
+		String method = binding.methodName;
+		RemoteViewsBinding.Setter setter = method == null ? null : RemoteViewsBinding.Setter.forValue(value);
+		if (setter == null && descriptor != REMOTE_CALL)
+		{
+			// no generic setter for this value, use the setter of the element, e.g. setOnClickPendingIntent for a PendingIntent
+			method = null;
+			setter = elementSetter(descriptor, binding);
+		}
+		// remote-call without a method is not supported
+
+		return setter == null ? null : new RemoteViewsBinding(binding.viewId, setter, method, value);
+	}
+
+
+	/**
+	 * Returns the {@link RemoteViewsBinding.Setter} that's specific to the given binding element.
+	 *
+	 * @return The {@link RemoteViewsBinding.Setter} or <code>null</code> if the element doesn't support the value.
+	 */
+	private static RemoteViewsBinding.Setter elementSetter(ElementDescriptor<?> descriptor, RemoteBinding binding)
+	{
+		Object value = binding.value;
+		RemoteViewsBinding.Setter setter = null;
+		if (descriptor == REMOTE_ONCLICK)
 		{
 			if (binding.descriptor == Model.PENDING_INTENT)
 			{
-				object.setOnClickPendingIntent(binding.viewId, (PendingIntent) binding.value);
+				setter = RemoteViewsBinding.Setter.ON_CLICK_PENDING_INTENT;
 			}
-			else if (VERSION.SDK_INT > 11 && binding.descriptor == Model.INTENT)
+			else if (VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && binding.descriptor == Model.INTENT)
 			{
-				object.setOnClickFillInIntent(binding.viewId, (Intent) binding.value);
+				setter = RemoteViewsBinding.Setter.ON_CLICK_FILL_IN_INTENT;
 			}
 		}
-		else if (childDescriptor == REMOTE_SET_TEXT)
+		else if (descriptor == REMOTE_SET_TEXT)
 		{
-			if (binding.value instanceof CharSequence)
+			if (value instanceof CharSequence)
 			{
-				object.setTextViewText(binding.viewId, (CharSequence) binding.value);
+				setter = RemoteViewsBinding.Setter.TEXT;
 			}
 		}
-		return object;
+		else if (descriptor == REMOTE_SET_IMAGE)
+		{
+			if (value instanceof Integer)
+			{
+				setter = RemoteViewsBinding.Setter.IMAGE_RESOURCE;
+			}
+			else if (value instanceof Uri)
+			{
+				setter = RemoteViewsBinding.Setter.IMAGE_URI;
+			}
+			else if (value instanceof Bitmap)
+			{
+				setter = RemoteViewsBinding.Setter.IMAGE_BITMAP;
+			}
+		}
+		else if (descriptor == REMOTE_SET_VISIBILITY)
+		{
+			if (value instanceof Integer)
+			{
+				setter = RemoteViewsBinding.Setter.VISIBILITY;
+			}
+		}
+		return setter;
+	}
+
+	/**
+	 * The layout and the bindings of the {@link RemoteViews} that's currently being built.
+	 */
+	static final class Template
+	{
+		int layoutId;
+		final List<RemoteViewsBinding> bindings = new ArrayList<RemoteViewsBinding>(8);
 	}
 
 	private static class RemoteBinding
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.predicate;
+
+import java.io.IOException;
+
+import org.dmfs.android.xmlmagic.tokenresolvers.AndroidTokenResolver;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+
+
+/**
+ * A boolean expression that has been compiled from an XML resource. The root element of the resource must be one of {@link org.dmfs.android.xmlmagic.Model#AND},
+ * {@link org.dmfs.android.xmlmagic.Model#OR}, {@link org.dmfs.android.xmlmagic.Model#XOR}, {@link org.dmfs.android.xmlmagic.Model#EQUALS} or
+ * {@link org.dmfs.android.xmlmagic.Model#BOOLEAN}.
+ * <p/>
+ * A {@link CompiledPredicate} can be evaluated any number of times with different {@link ITokenResolver}s without parsing the XML again. Sub-expressions that
+ * don't contain any placeholders are evaluated once when the predicate is compiled. Instances are immutable and can be evaluated by multiple threads at the
+ * same time.
+ * <p/>
+ * Example:
+ *
+ * <pre>
+ * <code>
+ * CompiledPredicate isVisible = CompiledPredicate.compile(context, R.xml.item_visible);
+ * 
+ * for (Bundle item : items)
+ * {
+ *     if (isVisible.evaluate(new BundleTokenResolver(item)))
+ *     {
+ *         ...
+ *     }
+ * }
+ * </code>
+ * </pre>
+ * <p/>
+ * Note: resource references are resolved when the predicate is compiled. A predicate should be compiled again when the configuration changes.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class CompiledPredicate
+{
+	private final Context mAppContext;
+	private final Node mRoot;
+
+
+	private CompiledPredicate(Context context, Node root)
+	{
+		mAppContext = context.getApplicationContext();
+		mRoot = root;
+	}
+
+
+	/**
+	 * Compile the boolean expression in the given XML resource.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @return The {@link CompiledPredicate}.
+	 */
+	public static CompiledPredicate compile(Context context, int id) throws IOException, XmlPullParserException, XmlObjectPullParserException
+	{
+		return new CompiledPredicate(context, PredicateCompiler.compile(context, id));
+	}
+
+
+	/**
+	 * Evaluate this predicate.
+	 *
+	 * @param resolver
+	 *            The {@link ITokenResolver} to resolve placeholder tokens, may be <code>null</code>.
+	 * @return The result of the expression.
+	 */
+	public boolean evaluate(ITokenResolver resolver)
+	{
+		if (mRoot.isConstant() || resolver == null)
+		{
+			return mRoot.booleanValue(null);
+		}
+		return mRoot.booleanValue(new AndroidTokenResolver(mAppContext).setResolvers(resolver));
+	}
+
+
+	/**
+	 * Returns whether the result of this predicate is independent of any placeholder tokens.
+	 *
+	 * @return <code>true</code> if {@link #evaluate(ITokenResolver)} always returns the same value.
+	 */
+	public boolean isConstant()
+	{
+		return mRoot.isConstant();
+	}
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dmfs.android.xmlmagic.StringFormatter;
+import org.dmfs.android.xmlmagic.builder.BooleanOperationObjectBuilder.BooleanOperation;
+import org.dmfs.android.xmlmagic.tokenresolvers.ITokenResolver;
+
+
+/**
+ * A node of a compiled expression tree. Nodes are immutable, so they can be evaluated by multiple threads at the same time.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+abstract class Node
+{
+	/**
+	 * The maximum recursion depth when resolving string resources.
+	 */
+	private final static int MAX_DEPTH = 5;
+
+	final static Node TRUE = new ConstantNode(Boolean.TRUE);
+	final static Node FALSE = new ConstantNode(Boolean.FALSE);
+
+
+	/**
+	 * Returns the value of this node.
+	 *
+	 * @param resolver
+	 *            The {@link ITokenResolver} to resolve placeholder tokens, may be <code>null</code>.
+	 * @return The value.
+	 */
+	abstract Object value(ITokenResolver resolver);
+
+
+	/**
+	 * Returns the boolean value of this node. Only call this if {@link #isBoolean()} returns <code>true</code>.
+	 *
+	 * @param resolver
+	 *            The {@link ITokenResolver} to resolve placeholder tokens, may be <code>null</code>.
+	 * @return The boolean value.
+	 */
+	boolean booleanValue(ITokenResolver resolver)
+	{
+		return Boolean.TRUE.equals(value(resolver));
+	}
+
+
+	/**
+	 * Returns whether this node always evaluates to a {@link Boolean}.
+	 */
+	abstract boolean isBoolean();
+
+
+	/**
+	 * Returns whether the value of this node doesn't depend on any placeholder tokens.
+	 */
+	abstract boolean isConstant();
+
+
+	static Node constant(boolean value)
+	{
+		return value ? TRUE : FALSE;
+	}
+
+
+	/**
+	 * Returns a node for the given constant value.
+	 */
+	static Node constant(Object value)
+	{
+		if (value instanceof Boolean)
+		{
+			return constant(((Boolean) value).booleanValue());
+		}
+		return new ConstantNode(value);
+	}
+
+
+	/**
+	 * Returns a node that results in the given text, with placeholder tokens resolved.
+	 *
+	 * @param text
+	 *            The text, may contain placeholders.
+	 * @param plainString
+	 *            <code>true</code> to return a {@link String}, <code>false</code> to return a {@link CharSequence} that may contain spans.
+	 */
+	static Node text(CharSequence text, boolean plainString)
+	{
+		if (text == null || !hasTokens(text))
+		{
+			return constant(plainString && text != null ? text.toString() : text);
+		}
+		return new TextNode(text, plainString);
+	}
+
+
+	/**
+	 * Returns a node that results in the boolean value of the given text.
+	 *
+	 * @param text
+	 *            The text, may contain placeholders.
+	 */
+	static Node booleanText(CharSequence text)
+	{
+		if (text == null || !hasTokens(text))
+		{
+			return constant(toBoolean(text));
+		}
+		return new BooleanTextNode(text);
+	}
+
+
+	/**
+	 * Returns a node that calculates the given {@link BooleanOperation} over the given operands. Constant operands are folded. Operands that are not boolean
+	 * are ignored.
+	 */
+	static Node operation(BooleanOperation operation, boolean invert, List<Node> operands)
+	{
+		List<Node> dynamic = new ArrayList<Node>(operands.size());
+		boolean hasValue = false;
+		boolean value = false;
+		for (Node operand : operands)
+		{
+			if (!operand.isBoolean())
+			{
+				continue;
+			}
+
+			if (operand.isConstant())
+			{
+				boolean operandValue = operand.booleanValue(null);
+				value = hasValue ? operation.calculate(value, operandValue) : operandValue;
+				hasValue = true;
+				if (operation.isDetermined(value))
+				{
+					// no other operand can change the result
+					return constant(invert != value);
+				}
+			}
+			else
+			{
+				dynamic.add(operand);
+			}
+		}
+
+		if (dynamic.isEmpty())
+		{
+			return constant(invert != (hasValue && value));
+		}
+
+		return new OperationNode(operation, invert, hasValue, value, dynamic.toArray(new Node[dynamic.size()]));
+	}
+
+
+	/**
+	 * Returns a node that evaluates to <code>true</code> if the values of all the given operands are equal.
+	 */
+	static Node equality(List<Node> operands)
+	{
+		boolean constant = true;
+		for (Node operand : operands)
+		{
+			constant &= operand.isConstant();
+		}
+
+		Node result = new EqualsNode(operands.toArray(new Node[operands.size()]));
+		return constant ? constant(result.booleanValue(null)) : result;
+	}
+
+
+	static boolean toBoolean(CharSequence text)
+	{
+		if (text == null)
+		{
+			return false;
+		}
+		String value = text.toString();
+		return "true".equalsIgnoreCase(value) || "1".equals(value);
+	}
+
+
+	private static boolean hasTokens(CharSequence text)
+	{
+		for (int i = 0, len = text.length(); i < len; ++i)
+		{
+			if (text.charAt(i) == '{')
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private final static class ConstantNode extends Node
+	{
+		private final Object mValue;
+
+
+		public ConstantNode(Object value)
+		{
+			mValue = value;
+		}
+
+
+		@Override
+		Object value(ITokenResolver resolver)
+		{
+			return mValue;
+		}
+
+
+		@Override
+		boolean booleanValue(ITokenResolver resolver)
+		{
+			return mValue == Boolean.TRUE;
+		}
+
+
+		@Override
+		boolean isBoolean()
+		{
+			return mValue instanceof Boolean;
+		}
+
+
+		@Override
+		boolean isConstant()
+		{
+			return true;
+		}
+	}
+
+	private final static class TextNode extends Node
+	{
+		private final CharSequence mText;
+		private final boolean mPlainString;
+
+
+		public TextNode(CharSequence text, boolean plainString)
+		{
+			mText = text;
+			mPlainString = plainString;
+		}
+
+
+		@Override
+		Object value(ITokenResolver resolver)
+		{
+			CharSequence result = StringFormatter.format(mText, resolver, MAX_DEPTH);
+			return mPlainString && result != null ? result.toString() : result;
+		}
+
+
+		@Override
+		boolean isBoolean()
+		{
+			return false;
+		}
+
+
+		@Override
+		boolean isConstant()
+		{
+			return false;
+		}
+	}
+
+	private final static class BooleanTextNode extends Node
+	{
+		private final CharSequence mText;
+
+
+		public BooleanTextNode(CharSequence text)
+		{
+			mText = text;
+		}
+
+
+		@Override
+		Object value(ITokenResolver resolver)
+		{
+			return booleanValue(resolver);
+		}
+
+
+		@Override
+		boolean booleanValue(ITokenResolver resolver)
+		{
+			return toBoolean(StringFormatter.format(mText, resolver, MAX_DEPTH));
+		}
+
+
+		@Override
+		boolean isBoolean()
+		{
+			return true;
+		}
+
+
+		@Override
+		boolean isConstant()
+		{
+			return false;
+		}
+	}
+
+	private final static class OperationNode extends Node
+	{
+		private final BooleanOperation mOperation;
+		private final boolean mInvert;
+		private final boolean mHasConstant;
+		private final boolean mConstant;
+		private final Node[] mOperands;
+
+
+		/**
+		 * @param hasConstant
+		 *            Whether any constant operands have been folded into <code>constant</code>.
+		 * @param constant
+		 *            The result of all constant operands.
+		 * @param operands
+		 *            The non-constant boolean operands, must not be empty.
+		 */
+		public OperationNode(BooleanOperation operation, boolean invert, boolean hasConstant, boolean constant, Node[] operands)
+		{
+			mOperation = operation;
+			mInvert = invert;
+			mHasConstant = hasConstant;
+			mConstant = constant;
+			mOperands = operands;
+		}
+
+
+		@Override
+		Object value(ITokenResolver resolver)
+		{
+			return booleanValue(resolver);
+		}
+
+
+		@Override
+		boolean booleanValue(ITokenResolver resolver)
+		{
+			final BooleanOperation operation = mOperation;
+			final Node[] operands = mOperands;
+			boolean value;
+			int i;
+			if (mHasConstant)
+			{
+				value = mConstant;
+				i = 0;
+			}
+			else
+			{
+				value = operands[0].booleanValue(resolver);
+				i = 1;
+			}
+
+			for (int count = operands.length; i < count && !operation.isDetermined(value); ++i)
+			{
+				value = operation.calculate(value, operands[i].booleanValue(resolver));
+			}
+			return mInvert != value;
+		}
+
+
+		@Override
+		boolean isBoolean()
+		{
+			return true;
+		}
+
+
+		@Override
+		boolean isConstant()
+		{
+			return false;
+		}
+	}
+
+	private final static class EqualsNode extends Node
+	{
+		private final Node[] mOperands;
+
+
+		public EqualsNode(Node[] operands)
+		{
+			mOperands = operands;
+		}
+
+
+		@Override
+		Object value(ITokenResolver resolver)
+		{
+			return booleanValue(resolver);
+		}
+
+
+		@Override
+		boolean booleanValue(ITokenResolver resolver)
+		{
+			final Node[] operands = mOperands;
+			if (operands.length < 2)
+			{
+				return true;
+			}
+
+			Object previous = operands[0].value(resolver);
+			for (int i = 1, count = operands.length; i < count; ++i)
+			{
+				Object current = operands[i].value(resolver);
+				if (previous == null ? current != null : !previous.equals(current))
+				{
+					return false;
+				}
+				previous = current;
+			}
+			return true;
+		}
+
+
+		@Override
+		boolean isBoolean()
+		{
+			return true;
+		}
+
+
+		@Override
+		boolean isConstant()
+		{
+			return false;
+		}
+	}
+}
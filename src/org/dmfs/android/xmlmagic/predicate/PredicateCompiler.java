@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.predicate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dmfs.android.xmlmagic.AndroidParserContext;
+import org.dmfs.android.xmlmagic.Model;
+import org.dmfs.android.xmlmagic.builder.AbstractStatefulObjectBuilder;
+import org.dmfs.android.xmlmagic.builder.BaseAndroidObjectBuilder;
+import org.dmfs.android.xmlmagic.builder.BooleanOperationObjectBuilder.BooleanOperation;
+import org.dmfs.xmlobjects.ElementDescriptor;
+import org.dmfs.xmlobjects.QualifiedName;
+import org.dmfs.xmlobjects.XmlContext;
+import org.dmfs.xmlobjects.pull.ParserContext;
+import org.dmfs.xmlobjects.pull.XmlObjectPull;
+import org.dmfs.xmlobjects.pull.XmlObjectPullParserException;
+import org.dmfs.xmlobjects.pull.XmlPath;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.util.AttributeSet;
+import android.util.Xml;
+
+
+/**
+ * Compiles boolean XML elements into a tree of {@link Node}s.
+ * <p/>
+ * The compiler uses its own {@link XmlContext} in which the elements {@code <and>}, {@code <or>}, {@code <xor>}, {@code <equals>}, {@code <boolean>},
+ * {@code <string>} and {@code <charsequence>} are mapped to builders that return {@link Node}s instead of values. Any other element is built as usual and
+ * becomes a constant. Such elements must not contain any placeholders, because they would never be resolved. The compiler rejects them with an
+ * {@link XmlObjectPullParserException}.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+final class PredicateCompiler
+{
+	private final static XmlPath EMPTY_PATH = new XmlPath();
+
+	private final static QualifiedName ATTR_INVERT = QualifiedName.get("invert");
+
+	private final static XmlContext COMPILER_CONTEXT = new XmlContext();
+
+	/**
+	 * The supported root elements, mapped by their local name.
+	 */
+	private final static Map<String, ElementDescriptor<Node>> ROOTS = new HashMap<String, ElementDescriptor<Node>>(8);
+
+	static
+	{
+		register("and", new OperationCompiler(BooleanOperation.and), true);
+		register("or", new OperationCompiler(BooleanOperation.or), true);
+		register("xor", new OperationCompiler(BooleanOperation.xor), true);
+		register("equals", new EqualsCompiler(), true);
+		register("boolean", new BooleanCompiler(), true);
+		register("string", new TextCompiler(true), false);
+		register("charsequence", new TextCompiler(false), false);
+	}
+
+
+	private static void register(String name, BaseAndroidObjectBuilder<Node> builder, boolean isRoot)
+	{
+		ElementDescriptor<Node> descriptor = ElementDescriptor.register(QualifiedName.get(Model.NAMESPACE, name), builder, COMPILER_CONTEXT);
+		if (isRoot)
+		{
+			ROOTS.put(name, descriptor);
+		}
+	}
+
+
+	private PredicateCompiler()
+	{
+	}
+
+
+	/**
+	 * Compile the boolean expression in the given XML resource.
+	 *
+	 * @param context
+	 *            A {@link Context}.
+	 * @param id
+	 *            The resource id of the XML file.
+	 * @return The root {@link Node} of the expression.
+	 */
+	static Node compile(Context context, int id) throws IOException, XmlPullParserException, XmlObjectPullParserException
+	{
+		Resources resources = context.getResources();
+
+		ElementDescriptor<Node> root;
+		XmlResourceParser parser = resources.getXml(id);
+		try
+		{
+			int type;
+			while ((type = parser.next()) != XmlPullParser.START_TAG && type != XmlPullParser.END_DOCUMENT)
+			{
+				// skip to the root element
+			}
+			if (type != XmlPullParser.START_TAG)
+			{
+				throw new XmlPullParserException("document has no root element");
+			}
+			root = Model.NAMESPACE.equals(parser.getNamespace()) ? ROOTS.get(parser.getName()) : null;
+			if (root == null)
+			{
+				throw new XmlPullParserException("unsupported root element '" + parser.getName() + "'");
+			}
+		}
+		finally
+		{
+			parser.close();
+		}
+
+		// compile without a resolver, so all placeholders are preserved
+		XmlObjectPull pullParser = new XmlObjectPull(resources.getXml(id), new AndroidParserContext(context, null, false));
+		pullParser.setContext(COMPILER_CONTEXT);
+		return pullParser.pull(root, null, EMPTY_PATH);
+	}
+
+
+	/**
+	 * Returns a {@link Node} for the given child value. Children that are not compiled into {@link Node}s are turned into constants, that's only valid if
+	 * they don't depend on placeholders or on the state of the system.
+	 *
+	 * @throws XmlObjectPullParserException
+	 *             if the child is not constant.
+	 */
+	private static <V> Node toNode(ElementDescriptor<V> childDescriptor, V child, ParserContext context) throws XmlObjectPullParserException
+	{
+		if (child instanceof Node)
+		{
+			return (Node) child;
+		}
+
+		// the compilers never mark the context dynamic, so the flag has been set by this child (otherwise we would have thrown earlier)
+		if (((AndroidParserContext) context).isDynamic())
+		{
+			throw new XmlObjectPullParserException("element '" + childDescriptor.qualifiedName.name
+				+ "' depends on placeholders and can not be used in a predicate, use a string, charsequence or boolean element instead");
+		}
+		return Node.constant(child);
+	}
+
+
+	/**
+	 * Returns a {@link Node} for the boolean value of the given attribute.
+	 */
+	private static Node booleanAttr(QualifiedName attribute, String value, ParserContext context, Resources resources)
+	{
+		AttributeSet p = Xml.asAttributeSet(context.getXmlPullParser());
+		int res = p.getAttributeResourceValue(attribute.namespace, attribute.name, 0 /* the invalid resource id */);
+		if (res == 0)
+		{
+			return Node.booleanText(p.getAttributeValue(attribute.namespace, attribute.name));
+		}
+		else if (resources != null)
+		{
+			return Node.constant(resources.getBoolean(res));
+		}
+		return Node.FALSE;
+	}
+
+	private final static class OperationCompiler extends AbstractStatefulObjectBuilder<Node, OperationState>
+	{
+		private final BooleanOperation mOperation;
+
+
+		public OperationCompiler(BooleanOperation operation)
+		{
+			mOperation = operation;
+		}
+
+
+		@Override
+		protected OperationState newState(ParserContext context)
+		{
+			return new OperationState();
+		}
+
+
+		@Override
+		public Node get(ElementDescriptor<Node> descriptor, Node recycle, ParserContext context) throws XmlObjectPullParserException
+		{
+			initState(context);
+			return null;
+		}
+
+
+		@Override
+		public Node update(ElementDescriptor<Node> descriptor, Node object, QualifiedName attribute, String value, ParserContext context)
+			throws XmlObjectPullParserException
+		{
+			if (attribute == ATTR_INVERT)
+			{
+				getState(context).invert = booleanAttr(attribute, value, context, getResources(context));
+			}
+			return object;
+		}
+
+
+		@Override
+		public <V> Node update(ElementDescriptor<Node> descriptor, Node object, ElementDescriptor<V> childDescriptor, V child, ParserContext context)
+			throws XmlObjectPullParserException
+		{
+			getState(context).operands.add(toNode(childDescriptor, child, context));
+			return object;
+		}
+
+
+		@Override
+		public Node finish(ElementDescriptor<Node> descriptor, Node object, ParserContext context) throws XmlObjectPullParserException
+		{
+			OperationState state = getState(context);
+			if (state.invert.isConstant())
+			{
+				return Node.operation(mOperation, state.invert.booleanValue(null), state.operands);
+			}
+
+			// the invert flag depends on a placeholder, apply it by xor-ing it with the result
+			List<Node> operands = new ArrayList<Node>(2);
+			operands.add(Node.operation(mOperation, false, state.operands));
+			operands.add(state.invert);
+			return Node.operation(BooleanOperation.xor, false, operands);
+		}
+	}
+
+	private final static class OperationState
+	{
+		Node invert = Node.FALSE;
+		final List<Node> operands = new ArrayList<Node>(4);
+	}
+
+	private final static class EqualsCompiler extends AbstractStatefulObjectBuilder<Node, List<Node>>
+	{
+		@Override
+		protected List<Node> newState(ParserContext context)
+		{
+			return new ArrayList<Node>(4);
+		}
+
+
+		@Override
+		public Node get(ElementDescriptor<Node> descriptor, Node recycle, ParserContext context) throws XmlObjectPullParserException
+		{
+			initState(context);
+			return null;
+		}
+
+
+		@Override
+		public <V> Node update(ElementDescriptor<Node> descriptor, Node object, ElementDescriptor<V> childDescriptor, V child, ParserContext context)
+			throws XmlObjectPullParserException
+		{
+			getState(context).add(toNode(childDescriptor, child, context));
+			return object;
+		}
+
+
+		@Override
+		public Node finish(ElementDescriptor<Node> descriptor, Node object, ParserContext context) throws XmlObjectPullParserException
+		{
+			return Node.equality(getState(context));
+		}
+	}
+
+	private final static class BooleanCompiler extends BaseAndroidObjectBuilder<Node>
+	{
+		@Override
+		public Node update(ElementDescriptor<Node> descriptor, Node object, QualifiedName attribute, String value, ParserContext context)
+			throws XmlObjectPullParserException
+		{
+			return booleanAttr(attribute, value, context, getResources(context));
+		}
+
+
+		@Override
+		public Node update(ElementDescriptor<Node> descriptor, Node object, String text, ParserContext context) throws XmlObjectPullParserException
+		{
+			if (object != null)
+			{
+				// we already have a value
+				return object;
+			}
+			return Node.booleanText(text);
+		}
+
+
+		@Override
+		public Node finish(ElementDescriptor<Node> descriptor, Node object, ParserContext context) throws XmlObjectPullParserException
+		{
+			// no value was specified: default to false
+			return object == null ? Node.FALSE : object;
+		}
+	}
+
+	private final static class TextCompiler extends BaseAndroidObjectBuilder<Node>
+	{
+		private final boolean mPlainString;
+
+
+		public TextCompiler(boolean plainString)
+		{
+			mPlainString = plainString;
+		}
+
+
+		@Override
+		public Node update(ElementDescriptor<Node> descriptor, Node object, QualifiedName attribute, String value, ParserContext context)
+			throws XmlObjectPullParserException
+		{
+			AttributeSet p = Xml.asAttributeSet(context.getXmlPullParser());
+			int res = p.getAttributeResourceValue(attribute.namespace, attribute.name, 0 /* the invalid resource id */);
+			Resources resources = getResources(context);
+			if (res == 0)
+			{
+				return Node.text(p.getAttributeValue(attribute.namespace, attribute.name), mPlainString);
+			}
+			else if (resources != null)
+			{
+				CharSequence text = resources.getText(res);
+				return Node.constant(mPlainString ? text.toString() : text);
+			}
+			return Node.constant(value);
+		}
+
+
+		@Override
+		public Node update(ElementDescriptor<Node> descriptor, Node object, String text, ParserContext context) throws XmlObjectPullParserException
+		{
+			if (object == null)
+			{
+				return Node.text(text, mPlainString);
+			}
+			return object;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.dmfs.android.xmlmagic.tokenresolvers;
+
+/**
+ * The base of {@link ITypedTokenResolver}s. By default {@link #resolveObject(String)} returns the value of {@link #resolveToken(String)} and the typed methods
+ * convert the result of {@link #resolveObject(String)}. Subclasses should override {@link #resolveObject(String)} to return values in their natural type and
+ * may override the other methods for sources that can return primitive values directly.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public abstract class AbstractTypedTokenResolver implements ITypedTokenResolver
+{
+
+	@Override
+	public int resolveInt(String token, int defaultValue)
+	{
+		return toInt(resolveObject(token), defaultValue);
+	}
+
+
+	@Override
+	public long resolveLong(String token, long defaultValue)
+	{
+		return toLong(resolveObject(token), defaultValue);
+	}
+
+
+	@Override
+	public boolean resolveBoolean(String token, boolean defaultValue)
+	{
+		return toBoolean(resolveObject(token), defaultValue);
+	}
+
+
+	@Override
+	public Object resolveObject(String token)
+	{
+		return resolveToken(token);
+	}
+
+
+	/**
+	 * Converts a token value into an int. The result is the same as parsing the string value of the token, values that are not exactly representable as an
+	 * int result in the default value, e.g. <code>1.9</code> or a long that exceeds the int range.
+	 *
+	 * @param value
+	 *            The value, may be <code>null</code>.
+	 * @param defaultValue
+	 *            The value to return if value is <code>null</code> or can not be converted.
+	 * @return The int value.
+	 */
+	public static int toInt(Object value, int defaultValue)
+	{
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+		{
+			return ((Number) value).intValue();
+		}
+		if (value instanceof Long)
+		{
+			long longValue = (Long) value;
+			return longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE ? (int) longValue : defaultValue;
+		}
+		if (value != null)
+		{
+			try
+			{
+				return Integer.parseInt(value.toString());
+			}
+			catch (NumberFormatException e)
+			{
+				// not a valid int
+			}
+		}
+		return defaultValue;
+	}
+
+
+	/**
+	 * Converts a token value into a long. The result is the same as parsing the string value of the token, values that are not exactly representable as a
+	 * long result in the default value.
+	 *
+	 * @param value
+	 *            The value, may be <code>null</code>.
+	 * @param defaultValue
+	 *            The value to return if value is <code>null</code> or can not be converted.
+	 * @return The long value.
+	 */
+	public static long toLong(Object value, long defaultValue)
+	{
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+		{
+			return ((Number) value).longValue();
+		}
+		if (value != null)
+		{
+			try
+			{
+				return Long.parseLong(value.toString());
+			}
+			catch (NumberFormatException e)
+			{
+				// not a valid long
+			}
+		}
+		return defaultValue;
+	}
+
+
+	/**
+	 * Converts a token value into a boolean. The result is the same as for the string value of the token: only "true" (ignoring case) and "1" are
+	 * <code>true</code>.
+	 *
+	 * @param value
+	 *            The value, may be <code>null</code>.
+	 * @param defaultValue
+	 *            The value to return if value is <code>null</code>.
+	 * @return The boolean value.
+	 */
+	public static boolean toBoolean(Object value, boolean defaultValue)
+	{
+		if (value instanceof Boolean)
+		{
+			return (Boolean) value;
+		}
+		if (value != null)
+		{
+			String string = value.toString();
+			return string.equalsIgnoreCase("true") || string.equals("1");
+		}
+		return defaultValue;
+	}
+}
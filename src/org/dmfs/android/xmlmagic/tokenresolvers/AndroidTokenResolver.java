@@ -27,7 +27,7 @@ import android.content.res.Resources;
 import android.os.Build;
 
 
-public class AndroidTokenResolver implements ITokenResolver
+public class AndroidTokenResolver extends AbstractTypedTokenResolver
 {
 	private final Context mContext;
 	private ITokenResolver[] mResolvers;
@@ -64,6 +64,10 @@ public class AndroidTokenResolver implements ITokenResolver
 		{
 			for (ITokenResolver resolver : mResolvers)
 			{
+				if (resolver == null)
+				{
+					continue;
+				}
 				CharSequence result = resolver.resolveToken(token);
 				if (result != null)
 				{
@@ -72,6 +76,52 @@ public class AndroidTokenResolver implements ITokenResolver
 			}
 		}
 
+		return resolveBuiltIn(token);
+	}
+
+
+	/**
+	 * Returns the value of the given token in its natural type. Values of typed resolvers keep their type, values of all other resolvers are returned as
+	 * {@link CharSequence}.
+	 */
+	@Override
+	public Object resolveObject(String token)
+	{
+		if (token == null)
+		{
+			return null;
+		}
+
+		if (mResolvers != null && mResolvers.length > 0)
+		{
+			for (ITokenResolver resolver : mResolvers)
+			{
+				if (resolver == null)
+				{
+					continue;
+				}
+				Object result = resolver instanceof ITypedTokenResolver ? ((ITypedTokenResolver) resolver).resolveObject(token) : resolver
+					.resolveToken(token);
+				if (result != null)
+				{
+					return result;
+				}
+			}
+		}
+
+		if (token.equals("@android.sdk"))
+		{
+			return Build.VERSION.SDK_INT;
+		}
+		return resolveBuiltIn(token);
+	}
+
+
+	/**
+	 * Resolves the tokens provided by this resolver.
+	 */
+	private CharSequence resolveBuiltIn(String token)
+	{
 		if (token.startsWith("@android."))
 		{
 			if (token.equals("@android.model"))
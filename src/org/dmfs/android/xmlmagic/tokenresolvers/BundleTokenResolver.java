@@ -20,7 +20,7 @@ package org.dmfs.android.xmlmagic.tokenresolvers;
 import android.os.Bundle;
 
 
-public class BundleTokenResolver implements ITokenResolver
+public class BundleTokenResolver extends AbstractTypedTokenResolver
 {
     private final Bundle mBundle;
 
@@ -68,7 +68,7 @@ public class BundleTokenResolver implements ITokenResolver
                     token = token.substring(dotIndex + 1);
                     if (currentBundle.containsKey(token))
                     {
-                        Object value = mBundle.get(token);
+                        Object value = currentBundle.get(token);
                         if (value != null)
                         {
                             return value.toString();
@@ -80,4 +80,40 @@ public class BundleTokenResolver implements ITokenResolver
         }
         return null;
     }
+
+
+    /**
+     * Returns the value in the Bundle without converting it into a String. Nested keys are resolved like in {@link #resolveToken(String)}.
+     */
+    @Override
+    public Object resolveObject(String token)
+    {
+        if (token == null || !token.startsWith("@bundle:"))
+        {
+            return null;
+        }
+
+        String key = token.substring(8);
+        Bundle currentBundle = mBundle;
+        if (currentBundle.containsKey(key))
+        {
+            return currentBundle.get(key);
+        }
+
+        int dotIndex;
+        while ((dotIndex = key.indexOf('.')) > 0)
+        {
+            currentBundle = currentBundle.getBundle(key.substring(0, dotIndex));
+            if (currentBundle == null)
+            {
+                return null;
+            }
+            key = key.substring(dotIndex + 1);
+            if (currentBundle.containsKey(key))
+            {
+                return currentBundle.get(key);
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.tokenresolvers;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * An {@link ITokenResolver} that memorizes the values returned by another {@link ITokenResolver}, so each distinct token is resolved only once. This includes
+ * tokens that can not be resolved.
+ * <p/>
+ * This resolver is thread safe as long as the decorated resolver is thread safe. If multiple threads request the same unknown token at the same time, the
+ * decorated resolver might be asked more than once.
+ * <p/>
+ * Typed values are cached separately, so a decorated {@link ITypedTokenResolver} is asked at most once for the string value and once for the typed value of
+ * each token.
+ * <p/>
+ * Note: the values are kept for the entire lifetime of this instance, so it should only be used for sources that don't change while it's in use.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public class CachingTokenResolver extends AbstractTypedTokenResolver
+{
+	/**
+	 * A marker for tokens that could not be resolved. It's compared by identity only.
+	 */
+	private final static String NO_VALUE = new String("");
+
+	private final ITokenResolver mResolver;
+	private final ConcurrentHashMap<String, CharSequence> mCache = new ConcurrentHashMap<String, CharSequence>(16);
+	private final ConcurrentHashMap<String, Object> mObjectCache;
+
+
+	/**
+	 * Create a new {@link CachingTokenResolver} that caches the values of the given {@link ITokenResolver}.
+	 *
+	 * @param resolver
+	 *            The {@link ITokenResolver} to cache.
+	 */
+	public CachingTokenResolver(ITokenResolver resolver)
+	{
+		mResolver = resolver;
+		mObjectCache = resolver instanceof ITypedTokenResolver ? new ConcurrentHashMap<String, Object>(16) : null;
+	}
+
+
+	@Override
+	public CharSequence resolveToken(String token)
+	{
+		if (token == null)
+		{
+			return null;
+		}
+
+		CharSequence result = mCache.get(token);
+		if (result == null)
+		{
+			result = mResolver.resolveToken(token);
+			if (result == null)
+			{
+				result = NO_VALUE;
+			}
+			mCache.put(token, result);
+		}
+		return result == NO_VALUE ? null : result;
+	}
+
+
+	@Override
+	public Object resolveObject(String token)
+	{
+		if (mObjectCache == null || token == null)
+		{
+			// the decorated resolver knows strings only
+			return resolveToken(token);
+		}
+
+		Object result = mObjectCache.get(token);
+		if (result == null)
+		{
+			result = ((ITypedTokenResolver) mResolver).resolveObject(token);
+			if (result == null)
+			{
+				result = NO_VALUE;
+			}
+			mObjectCache.put(token, result);
+		}
+		return result == NO_VALUE ? null : result;
+	}
+}
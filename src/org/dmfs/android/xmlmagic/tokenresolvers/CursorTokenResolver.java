@@ -17,10 +17,12 @@
 
 package org.dmfs.android.xmlmagic.tokenresolvers;
 
+import android.annotation.TargetApi;
 import android.database.Cursor;
+import android.os.Build;
 
 
-public class CursorTokenResolver implements ITokenResolver
+public class CursorTokenResolver extends AbstractTypedTokenResolver
 {
     private final Cursor mCursor;
 
@@ -55,4 +57,61 @@ public class CursorTokenResolver implements ITokenResolver
         }
         return null;
     }
+
+
+    /**
+     * Returns the value of the column as a {@link Long} or {@link Double} if the column contains a number (on Android 3.0 and higher), otherwise as a String.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    @Override
+    public Object resolveObject(String token)
+    {
+        int columnIndex = getColumnIndex(token);
+        if (columnIndex < 0)
+        {
+            return null;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+        {
+            switch (mCursor.getType(columnIndex))
+            {
+                case Cursor.FIELD_TYPE_NULL:
+                    return null;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return mCursor.getLong(columnIndex);
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return mCursor.getDouble(columnIndex);
+            }
+        }
+        return mCursor.getString(columnIndex);
+    }
+
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    @Override
+    public int resolveInt(String token, int defaultValue)
+    {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+        {
+            int columnIndex = getColumnIndex(token);
+            if (columnIndex >= 0 && mCursor.getType(columnIndex) == Cursor.FIELD_TYPE_INTEGER)
+            {
+                // read the value directly, no boxing required, getInt would truncate 64 bit values
+                long value = mCursor.getLong(columnIndex);
+                return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? (int) value : defaultValue;
+            }
+        }
+        return super.resolveInt(token, defaultValue);
+    }
+
+
+    private int getColumnIndex(String token)
+    {
+        if (token == null || !token.startsWith("@cursor:"))
+        {
+            return -1;
+        }
+        return mCursor.getColumnIndex(token.substring(8));
+    }
 }
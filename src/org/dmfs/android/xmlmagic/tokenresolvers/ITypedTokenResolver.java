@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.dmfs.android.xmlmagic.tokenresolvers;
+
+/**
+ * An {@link ITokenResolver} that can return token values in their natural type. This allows builders to read numbers and booleans without formatting them
+ * into a string and parsing them again.
+ * <p/>
+ * Implementations usually extend {@link AbstractTypedTokenResolver}, which bridges all typed methods to {@link #resolveObject(String)} and
+ * {@link #resolveToken(String)}.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public interface ITypedTokenResolver extends ITokenResolver
+{
+	/**
+	 * Returns the value for the given token as an int. The result must be the same as parsing the string value of the token with
+	 * {@link Integer#parseInt(String)}, so values that are not exactly representable as an int result in the default value.
+	 *
+	 * @param token
+	 *            A token.
+	 * @param defaultValue
+	 *            The value to return if the token is not known or its value is not a valid int.
+	 * @return The int value of the token.
+	 */
+	public int resolveInt(String token, int defaultValue);
+
+
+	/**
+	 * Returns the value for the given token as a long. The result must be the same as parsing the string value of the token with
+	 * {@link Long#parseLong(String)}.
+	 *
+	 * @param token
+	 *            A token.
+	 * @param defaultValue
+	 *            The value to return if the token is not known or its value is not a valid long.
+	 * @return The long value of the token.
+	 */
+	public long resolveLong(String token, long defaultValue);
+
+
+	/**
+	 * Returns the value for the given token as a boolean. Values are <code>true</code> if they are {@link Boolean#TRUE} or if their string value equals "true"
+	 * (ignoring case) or "1", just like for string values.
+	 *
+	 * @param token
+	 *            A token.
+	 * @param defaultValue
+	 *            The value to return if the token is not known.
+	 * @return The boolean value of the token.
+	 */
+	public boolean resolveBoolean(String token, boolean defaultValue);
+
+
+	/**
+	 * Returns the value for the given token in its natural type, e.g. an {@link Integer} for an integer column of a {@link android.database.Cursor}.
+	 *
+	 * @param token
+	 *            A token.
+	 * @return The value or <code>null</code> if the token is not known.
+	 */
+	public Object resolveObject(String token);
+}
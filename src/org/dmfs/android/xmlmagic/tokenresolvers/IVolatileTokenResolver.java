@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.tokenresolvers;
+
+/**
+ * Marker interface of an {@link ITokenResolver} that may return different values for the same token while a single object is being loaded, e.g. a resolver
+ * that returns a counter or the current time.
+ * <p/>
+ * Token values are usually resolved only once per load. If any of the resolvers passed to {@link org.dmfs.android.xmlmagic.XmlLoader} implements this
+ * interface, every occurrence of a token is resolved again.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public interface IVolatileTokenResolver extends ITokenResolver
+{
+}
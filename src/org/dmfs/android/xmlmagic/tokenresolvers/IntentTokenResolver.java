@@ -48,13 +48,38 @@ import android.os.Bundle;
  * {@literal @}intent.extra:KEY1.KEY2.KEY3
  * </code>
  * </pre>
+ * <p/>
+ * The fields of the Intent are read when the resolver is created, the extras are copied once when the first extra is resolved. Changes to the Intent after
+ * that are not reflected by this resolver.
  * 
  * @author Marten Gajda <marten@dmfs.org>
  */
-public class IntentTokenResolver implements ITokenResolver
+public class IntentTokenResolver extends AbstractTypedTokenResolver
 {
+	private final static String PREFIX = "@intent.";
+	private final static String PREFIX_EXTRA = "@intent.extra:";
+
 	private final Intent mIntent;
 
+	/*
+	 * The fields of the Intent, they are read when the resolver is created.
+	 */
+	private final String mData;
+	private final String mScheme;
+	private final String mAction;
+	private final String mType;
+
+	/**
+	 * A snapshot of the extras of the Intent. {@link Intent#getExtras()} returns a new copy of the extras each time, so it's called at most once. Guarded by
+	 * this instance.
+	 */
+	private Bundle mExtras;
+
+	/**
+	 * Whether {@link #mExtras} has been initialized. Guarded by this instance.
+	 */
+	private boolean mExtrasLoaded;
+
 
 	/**
 	 * Creates an {@link IntentTokenResolver} for the given {@link Intent}.
@@ -65,74 +90,98 @@ public class IntentTokenResolver implements ITokenResolver
 	public IntentTokenResolver(Intent intent)
 	{
 		mIntent = intent;
+		mData = intent.getDataString();
+		mScheme = intent.getScheme();
+		mAction = intent.getAction();
+		mType = intent.getType();
 	}
 
 
 	@Override
 	public CharSequence resolveToken(String token)
 	{
-		if (token == null)
+		Object value = resolveObject(token);
+		return value == null ? null : value.toString();
+	}
+
+
+	/**
+	 * Returns the value of the given token without converting it into a String. Extras are returned in their natural type.
+	 */
+	@Override
+	public Object resolveObject(String token)
+	{
+		if (token == null || !token.startsWith(PREFIX))
 		{
 			return null;
 		}
-		if (token.startsWith("@intent."))
+
+		if (token.startsWith(PREFIX_EXTRA))
 		{
-			if (token.equals("@intent.data"))
-			{
-				return mIntent.getDataString();
-			}
-			else if (token.equals("@intent.data.scheme"))
-			{
-				return mIntent.getScheme();
-			}
-			else if (token.equals("@intent.action"))
-			{
-				return mIntent.getAction();
-			}
-			else if (token.equals("@intent.type"))
+			return resolveExtra(token.substring(PREFIX_EXTRA.length()));
+		}
+		else if (token.equals("@intent.data"))
+		{
+			return mData;
+		}
+		else if (token.equals("@intent.data.scheme"))
+		{
+			return mScheme;
+		}
+		else if (token.equals("@intent.action"))
+		{
+			return mAction;
+		}
+		else if (token.equals("@intent.type"))
+		{
+			return mType;
+		}
+		return null;
+	}
+
+
+	/**
+	 * Returns the value of the given extra. Keys that are not found as is are resolved in nested Bundles.
+	 */
+	private Object resolveExtra(String key)
+	{
+		Bundle bundle = getExtras();
+		if (bundle == null)
+		{
+			// the Intent has no extras
+			return null;
+		}
+
+		if (bundle.containsKey(key))
+		{
+			return bundle.get(key);
+		}
+
+		int dotIndex;
+		while ((dotIndex = key.indexOf('.')) > 0)
+		{
+			bundle = bundle.getBundle(key.substring(0, dotIndex));
+			if (bundle == null)
 			{
-				return mIntent.getType();
+				return null;
 			}
-			else if (token.startsWith("@intent.extra:"))
+			key = key.substring(dotIndex + 1);
+			if (bundle.containsKey(key))
 			{
-				Bundle bundle = mIntent.getExtras();
-				token = token.substring(14);
-
-				if (bundle.containsKey(token))
-				{
-					Object value = bundle.get(token);
-					if (value != null)
-					{
-						return value.toString();
-					}
-					return null;
-				}
-				else
-				{
-					int dotIndex;
-
-					while ((dotIndex = token.indexOf('.')) > 0)
-					{
-						String subkey = token.substring(0, dotIndex);
-						bundle = bundle.getBundle(subkey);
-						if (bundle == null)
-						{
-							return null;
-						}
-						token = token.substring(dotIndex + 1);
-						if (bundle.containsKey(token))
-						{
-							Object value = bundle.get(token);
-							if (value != null)
-							{
-								return value.toString();
-							}
-							return null;
-						}
-					}
-				}
+				return bundle.get(key);
 			}
 		}
 		return null;
 	}
+
+
+	private synchronized Bundle getExtras()
+	{
+		if (!mExtrasLoaded)
+		{
+			mExtras = mIntent.getExtras();
+			mExtrasLoaded = true;
+		}
+		return mExtras;
+	}
 }
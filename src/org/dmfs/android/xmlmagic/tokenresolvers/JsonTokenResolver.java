@@ -42,7 +42,7 @@ import org.json.JSONObject;
  * 
  * @author Marten Gajda <marten@dmfs.org>
  */
-public class JsonTokenResolver implements ITokenResolver
+public class JsonTokenResolver extends AbstractTypedTokenResolver
 {
 	private final JSONObject mJsonObject;
 
@@ -82,7 +82,7 @@ public class JsonTokenResolver implements ITokenResolver
 
 				while ((dotIndex = token.indexOf('.')) > 0)
 				{
-					currentObject = mJsonObject.optJSONObject(token.substring(0, dotIndex));
+					currentObject = currentObject.optJSONObject(token.substring(0, dotIndex));
 					if (currentObject == null)
 					{
 						return null;
@@ -99,6 +99,50 @@ public class JsonTokenResolver implements ITokenResolver
 	}
 
 
+	/**
+	 * Returns the value in the JSON object without converting it into a String, e.g. an {@link Integer} or a {@link Boolean}. Nested keys are resolved like in
+	 * {@link #resolveToken(String)}.
+	 */
+	@Override
+	public Object resolveObject(String token)
+	{
+		if (token == null || !token.startsWith("@json:"))
+		{
+			return null;
+		}
+
+		String key = token.substring(6);
+		JSONObject currentObject = mJsonObject;
+		if (currentObject.has(key))
+		{
+			return getValue(currentObject, key);
+		}
+
+		int dotIndex;
+		while ((dotIndex = key.indexOf('.')) > 0)
+		{
+			currentObject = currentObject.optJSONObject(key.substring(0, dotIndex));
+			if (currentObject == null)
+			{
+				return null;
+			}
+			key = key.substring(dotIndex + 1);
+			if (currentObject.has(key))
+			{
+				return getValue(currentObject, key);
+			}
+		}
+		return null;
+	}
+
+
+	private Object getValue(JSONObject jsonObject, String key)
+	{
+		Object value = jsonObject.opt(key);
+		return value == JSONObject.NULL ? null : value;
+	}
+
+
 	private String getAsString(JSONObject jsonObject, String key)
 	{
 		try
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 Marten Gajda <marten@dmfs.org>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.dmfs.android.xmlmagic.tokenresolvers;
+
+/**
+ * A token value that's already percent-encoded for use in a {@link android.net.Uri}. {@link ITokenResolver}s may return instances of this class for values
+ * that are stored in encoded form. Such values are inserted into Uri parts as they are, whereas all other values are encoded first.
+ * <p/>
+ * In any other context this value behaves like the plain encoded {@link String}.
+ *
+ * @author Marten Gajda <marten@dmfs.org>
+ */
+public final class UriEncodedValue implements CharSequence
+{
+	private final String mValue;
+
+
+	/**
+	 * Create a new {@link UriEncodedValue}.
+	 *
+	 * @param encodedValue
+	 *            The value, it must already be percent-encoded.
+	 */
+	public UriEncodedValue(String encodedValue)
+	{
+		if (encodedValue == null)
+		{
+			throw new IllegalArgumentException("encodedValue must not be null");
+		}
+		mValue = encodedValue;
+	}
+
+
+	@Override
+	public int length()
+	{
+		return mValue.length();
+	}
+
+
+	@Override
+	public char charAt(int index)
+	{
+		return mValue.charAt(index);
+	}
+
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return mValue.subSequence(start, end);
+	}
+
+
+	@Override
+	public String toString()
+	{
+		return mValue;
+	}
+}